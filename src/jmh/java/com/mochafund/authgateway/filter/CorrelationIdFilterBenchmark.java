@@ -0,0 +1,75 @@
+package com.mochafund.authgateway.filter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CorrelationIdFilterBenchmark {
+
+    private static final String INBOUND_ID = "0192f1c4-7b7e-7a3d-9c1e-5b6f2d8a4e10";
+
+    private GatewayFilter filter;
+    private CorrelationIdWebFilter webFilter;
+    private final GatewayFilterChain chain = exchange -> Mono.empty();
+    private final WebFilterChain webChain = exchange -> Mono.empty();
+
+    @Setup
+    public void setup() {
+        filter = new CorrelationIdGatewayFilterFactory().apply(new CorrelationIdGatewayFilterFactory.Config());
+        webFilter = new CorrelationIdWebFilter();
+    }
+
+    @Benchmark
+    public void filter() {
+        var exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/api/identity/users/me"));
+        filter.filter(exchange, chain).block();
+    }
+
+    /** Same work from 8 threads, which is where shared-state contention in ID generation shows up. */
+    @Benchmark
+    @Threads(8)
+    public void filterContended() {
+        filter();
+    }
+
+    @Benchmark
+    public void webFilterGenerated() {
+        var exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/api/identity/users/me"));
+        webFilter.filter(exchange, webChain).block();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void webFilterGeneratedContended() {
+        webFilterGenerated();
+    }
+
+    @Benchmark
+    public void webFilterInbound() {
+        var exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/api/identity/users/me")
+                .header("X-Correlation-Id", INBOUND_ID));
+        webFilter.filter(exchange, webChain).block();
+    }
+}
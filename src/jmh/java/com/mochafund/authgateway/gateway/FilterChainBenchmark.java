@@ -0,0 +1,82 @@
+package com.mochafund.authgateway.gateway;
+
+import com.mochafund.authgateway.support.LocalGateway;
+import com.mochafund.authgateway.support.StubInternalGateway;
+import com.mochafund.authgateway.support.StubKeycloak;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full WebFlux security + gateway filter chain for a bearer-token {@code /api/**} request, with the
+ * session store on the heap and Keycloak/internal gateway replaced by local Netty stubs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class FilterChainBenchmark {
+
+    private StubKeycloak keycloak;
+    private StubInternalGateway internalGateway;
+    private LocalGateway gateway;
+    private HttpClient client;
+    private String bearer;
+
+    @Setup
+    public void setup() {
+        keycloak = new StubKeycloak("bench", Duration.ZERO);
+        internalGateway = new StubInternalGateway(Duration.ZERO);
+        gateway = new LocalGateway(keycloak, internalGateway);
+
+        bearer = "Bearer " + keycloak.accessToken("service-account-bench");
+        client = HttpClient.create(ConnectionProvider.create("bench", 64)).baseUrl(gateway.baseUrl());
+    }
+
+    @TearDown
+    public void tearDown() {
+        gateway.close();
+        internalGateway.close();
+        keycloak.close();
+    }
+
+    @Benchmark
+    public int proxiedRequest() {
+        return request();
+    }
+
+    @Benchmark
+    @Threads(16)
+    public int proxiedRequestConcurrent() {
+        return request();
+    }
+
+    private int request() {
+        Integer status = client.headers(h -> h.set(HttpHeaderNames.AUTHORIZATION, bearer))
+                .get()
+                .uri("/api/identity/users/me")
+                .responseSingle((res, body) -> body.thenReturn(res.status().code()))
+                .block();
+        if (status == null || status != 200) {
+            throw new IllegalStateException("Unexpected status " + status);
+        }
+        return status;
+    }
+}
@@ -0,0 +1,328 @@
+package com.mochafund.authgateway.load;
+
+import com.mochafund.authgateway.support.LocalGateway;
+import com.mochafund.authgateway.support.StubInternalGateway;
+import com.mochafund.authgateway.support.StubKeycloak;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.cookie.Cookie;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.convert.DurationStyle;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.http.client.HttpClientResponse;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
+
+/**
+ * Drives concurrent browser-style logins and session-authenticated {@code /api/**} requests through
+ * the real gateway, booted in-process against {@link StubKeycloak} and {@link StubInternalGateway}
+ * with sessions on the heap. Reports p50/p99/p999 and throughput per stage:
+ * <ul>
+ *   <li>{@code login.authorize} - {@code /oauth2/authorization/auth-gateway} up to the redirect to the IdP</li>
+ *   <li>{@code login.idp} - the stub's authorization endpoint (only its configured latency, kept for completeness)</li>
+ *   <li>{@code login.callback} - code exchange, ID token validation, user info, then {@code SuccessHandler}'s
+ *       bootstrap, refresh and authorized-client save</li>
+ *   <li>{@code login.total} - the three steps above</li>
+ *   <li>{@code proxy} - a {@code TokenRelay}-ed request to the internal gateway with the session cookie</li>
+ * </ul>
+ * With {@code returning=true} the measured logins reuse the warmup users, so (up to {@code warmup} of
+ * them) they arrive already bootstrapped. Run through the {@code jmh} profile, options as {@code name=value}:
+ * <pre>
+ * ./mvnw -Pjmh test-compile exec:exec@load -Dload.args="users=500 concurrency=64 keycloak-latency=20ms"
+ * </pre>
+ */
+public final class LoadHarness {
+
+    private static final String REGISTRATION_ID = "auth-gateway";
+
+    private final Options options;
+    private final String gatewayUrl;
+    private final HttpClient client;
+    private final Map<String, Stage> stages = new LinkedHashMap<>();
+
+    private LoadHarness(Options options, String gatewayUrl) {
+        this.options = options;
+        this.gatewayUrl = gatewayUrl;
+        this.client = HttpClient.create(ConnectionProvider.builder("load")
+                        .maxConnections(options.concurrency() * 2)
+                        .pendingAcquireMaxCount(-1)
+                        .build())
+                .followRedirect(false);
+        for (String name : List.of("login.authorize", "login.idp", "login.callback", "login.total", "proxy")) {
+            stages.put(name, new Stage(name));
+        }
+    }
+
+    public static void main(String[] args) {
+        Options options = Options.parse(args);
+        System.out.println("Load options: " + options);
+
+        try (var keycloak = new StubKeycloak("load", options.keycloakLatency());
+             var internalGateway = new StubInternalGateway(options.apiLatency());
+             var gateway = new LocalGateway(keycloak, internalGateway)) {
+
+            if (options.warmupUsers() > 0) {
+                LoadHarness warmup = new LoadHarness(options, gateway.baseUrl());
+                warmup.run("warmup", options.warmupUsers());
+            }
+
+            LoadHarness harness = new LoadHarness(options, gateway.baseUrl());
+            harness.run(options.returning() ? "warmup" : "load", options.users());
+            harness.report();
+            reportUpstreams(keycloak, internalGateway, gateway.context().getBean(MeterRegistry.class));
+        }
+        System.exit(0);
+    }
+
+    private void run(String prefix, int userCount) {
+        long loginStart = System.nanoTime();
+        List<VirtualUser> users = Flux.range(0, userCount)
+                .flatMap(i -> login(new VirtualUser(prefix + "-user-" + i)), options.concurrency())
+                .collectList()
+                .block();
+        stages.get("login.total").wallNanos = System.nanoTime() - loginStart;
+        if (users == null || users.isEmpty()) {
+            throw new IllegalStateException("No login succeeded; see the errors above");
+        }
+
+        long proxyStart = System.nanoTime();
+        Flux.range(0, users.size() * options.requestsPerUser())
+                .flatMap(i -> proxy(users.get(i % users.size())), options.concurrency())
+                .then()
+                .block();
+        stages.get("proxy").wallNanos = System.nanoTime() - proxyStart;
+    }
+
+    private Mono<VirtualUser> login(VirtualUser user) {
+        long start = System.nanoTime();
+        return redirect(user, gatewayUrl + "/oauth2/authorization/" + REGISTRATION_ID, "login.authorize")
+                .flatMap(idp -> redirect(user, idp + "&login_hint=" + user.name(), "login.idp"))
+                .flatMap(callback -> redirect(user, callback, "login.callback"))
+                .flatMap(target -> target.contains("error")
+                        ? Mono.error(new IllegalStateException("Login redirected to " + target))
+                        : Mono.just(user))
+                .doOnNext(u -> stages.get("login.total").record(System.nanoTime() - start))
+                .onErrorResume(ex -> {
+                    stages.get("login.total").fail(ex);
+                    return Mono.empty();
+                });
+    }
+
+    private Mono<Void> proxy(VirtualUser user) {
+        return timed("proxy", client.headers(h -> user.applyCookies(h::set))
+                .get()
+                .uri(gatewayUrl + "/api/identity/users/me")
+                .responseSingle((res, body) -> body.then(res.status().code() == 200
+                        ? Mono.just(res.status().code())
+                        : Mono.error(new IllegalStateException("Proxy returned " + res.status())))))
+                // Failed and shed (503) requests are counted in the stage's errors; the run carries on
+                .onErrorResume(ex -> Mono.empty())
+                .then();
+    }
+
+    /** Issues a GET that must answer with a redirect and returns the {@code Location}. */
+    private Mono<String> redirect(VirtualUser user, String url, String stage) {
+        boolean toGateway = url.startsWith(gatewayUrl);
+        return timed(stage, client.headers(h -> {
+                    if (toGateway) {
+                        user.applyCookies(h::set);
+                    }
+                })
+                .get()
+                .uri(url)
+                .responseSingle((res, body) -> body.then(Mono.defer(() -> {
+                    if (toGateway) {
+                        user.storeCookies(res);
+                    }
+                    String location = res.responseHeaders().get(HttpHeaderNames.LOCATION);
+                    return res.status().code() == 302 && location != null
+                            ? Mono.just(location)
+                            : Mono.error(new IllegalStateException(stage + " returned " + res.status()));
+                }))));
+    }
+
+    private <T> Mono<T> timed(String stage, Mono<T> call) {
+        Stage s = stages.get(stage);
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return call.doOnSuccess(v -> s.record(System.nanoTime() - start))
+                    .doOnError(s::fail);
+        });
+    }
+
+    private void report() {
+        System.out.printf("%n%-16s %8s %7s %10s %9s %9s %9s %9s%n",
+                "stage", "count", "errors", "ops/s", "p50 ms", "p99 ms", "p999 ms", "max ms");
+        for (Stage s : stages.values()) {
+            Histogram h = s.histogram;
+            long wall = s.wallNanos > 0 ? s.wallNanos : stages.get("login.total").wallNanos;
+            double throughput = wall > 0 ? h.getTotalCount() / (wall / 1e9) : 0;
+            System.out.printf("%-16s %8d %7d %10.1f %9.2f %9.2f %9.2f %9.2f%n",
+                    s.name, h.getTotalCount(), s.errors.sum(), throughput,
+                    millis(h.getValueAtPercentile(50)), millis(h.getValueAtPercentile(99)),
+                    millis(h.getValueAtPercentile(99.9)), millis(h.getMaxValue()));
+        }
+        stages.values().stream()
+                .flatMap(s -> s.sampleErrors.stream().map(e -> s.name + ": " + e))
+                .limit(10)
+                .forEach(e -> System.out.println("  error " + e));
+    }
+
+    private static void reportUpstreams(StubKeycloak keycloak, StubInternalGateway internalGateway, MeterRegistry registry) {
+        System.out.printf("%nStub Keycloak calls: %s%n", keycloak.calls());
+        System.out.printf("Stub internal gateway: bootstraps=%d, api=%d%n",
+                internalGateway.bootstraps(), internalGateway.requests());
+
+        System.out.println("\nGateway-side upstream calls (http.client.requests, incl. warmup):");
+        registry.find("http.client.requests").timers().stream()
+                .sorted(Comparator.comparing((Timer t) -> String.valueOf(t.getId().getTag("uri"))))
+                .forEach(t -> System.out.printf("  %-45s %-6s %8d  mean %7.2f ms  max %7.2f ms%n",
+                        Objects.requireNonNullElse(t.getId().getTag("uri"), "(proxied route)"),
+                        Objects.requireNonNullElse(t.getId().getTag("status"), ""), t.count(),
+                        t.mean(TimeUnit.MILLISECONDS), t.max(TimeUnit.MILLISECONDS)));
+
+        System.out.println("\nGateway stage timers (authgw.*, incl. warmup):");
+        registry.getMeters().stream()
+                .filter(m -> m instanceof Timer && m.getId().getName().startsWith("authgw."))
+                .map(Timer.class::cast)
+                .filter(t -> t.count() > 0)
+                .sorted(Comparator.comparing((Timer t) -> t.getId().toString()))
+                .forEach(t -> System.out.printf("  %-32s %-32s %8d  mean %7.2f ms  max %7.2f ms%n",
+                        t.getId().getName(), tagsOf(t), t.count(),
+                        t.mean(TimeUnit.MILLISECONDS), t.max(TimeUnit.MILLISECONDS)));
+
+        System.out.println("\nGateway concurrency limit (at end of run):");
+        registry.find("authgw.gateway.concurrency.limit").gauges().forEach(g -> System.out.printf(
+                "  %-32s %-32s %8.0f%n", g.getId().getName(), tagsOf(g), g.value()));
+        registry.find("authgw.gateway.concurrency.shed").counters().forEach(c -> System.out.printf(
+                "  %-32s %-32s %8.0f%n", c.getId().getName(), tagsOf(c), c.count()));
+
+        System.out.println("\nHedges and retries (incl. warmup):");
+        registry.getMeters().stream()
+                .filter(m -> m instanceof Counter
+                        && (m.getId().getName().startsWith("authgw.gateway.hedge.") || m.getId().getName().startsWith("authgw.retry.")))
+                .map(Counter.class::cast)
+                .sorted(Comparator.comparing((Counter c) -> c.getId().toString()))
+                .forEach(c -> System.out.printf(
+                        "  %-36s %-32s %8.0f%n", c.getId().getName(), tagsOf(c), c.count()));
+    }
+
+    private static String tagsOf(Meter meter) {
+        return meter.getId().getTags().stream()
+                .filter(tag -> !tag.getKey().equals("application"))
+                .map(tag -> tag.getKey() + "=" + tag.getValue())
+                .collect(Collectors.joining(","));
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+
+    private static final class Stage {
+        final String name;
+        final Histogram histogram = new ConcurrentHistogram(3);
+        final LongAdder errors = new LongAdder();
+        final Set<String> sampleErrors = ConcurrentHashMap.newKeySet();
+        long wallNanos;
+
+        Stage(String name) {
+            this.name = name;
+        }
+
+        void record(long nanos) {
+            histogram.recordValue(nanos);
+        }
+
+        void fail(Throwable ex) {
+            errors.increment();
+            if (sampleErrors.size() < 3) {
+                sampleErrors.add(ex.toString());
+            }
+        }
+    }
+
+    /** One browser: a name used as the login hint and the gateway's cookies. */
+    private record VirtualUser(String name, Map<String, String> cookies) {
+
+        VirtualUser(String name) {
+            this(name, new ConcurrentHashMap<>());
+        }
+
+        void storeCookies(HttpClientResponse response) {
+            for (Set<Cookie> values : response.cookies().values()) {
+                for (Cookie cookie : values) {
+                    if (cookie.value().isEmpty() || cookie.maxAge() == 0) {
+                        cookies.remove(cookie.name());
+                    } else {
+                        cookies.put(cookie.name(), cookie.value());
+                    }
+                }
+            }
+        }
+
+        void applyCookies(BiConsumer<CharSequence, Object> header) {
+            if (cookies.isEmpty()) {
+                return;
+            }
+            List<String> pairs = new ArrayList<>(cookies.size());
+            cookies.forEach((name, value) -> pairs.add(name + "=" + value));
+            header.accept(HttpHeaderNames.COOKIE, String.join("; ", pairs));
+        }
+    }
+
+    record Options(
+            int users,
+            int warmupUsers,
+            int concurrency,
+            int requestsPerUser,
+            boolean returning,
+            Duration keycloakLatency,
+            Duration apiLatency
+    ) {
+
+        static Options parse(String[] args) {
+            Map<String, String> values = new HashMap<>();
+            for (String arg : args) {
+                int eq = arg.indexOf('=');
+                if (eq < 1) {
+                    throw new IllegalArgumentException("Expected name=value but got " + arg);
+                }
+                values.put(arg.substring(0, eq), arg.substring(eq + 1));
+            }
+            Options options = new Options(
+                    Integer.parseInt(values.getOrDefault("users", "200")),
+                    Integer.parseInt(values.getOrDefault("warmup", "50")),
+                    Integer.parseInt(values.getOrDefault("concurrency", "32")),
+                    Integer.parseInt(values.getOrDefault("requests", "20")),
+                    Boolean.parseBoolean(values.getOrDefault("returning", "false")),
+                    DurationStyle.detectAndParse(values.getOrDefault("keycloak-latency", "0ms")),
+                    DurationStyle.detectAndParse(values.getOrDefault("api-latency", "0ms")));
+            values.keySet().removeAll(Set.of("users", "warmup", "concurrency", "requests", "returning",
+                    "keycloak-latency", "api-latency"));
+            if (!values.isEmpty()) {
+                throw new IllegalArgumentException("Unknown options " + values.keySet());
+            }
+            return options;
+        }
+    }
+}
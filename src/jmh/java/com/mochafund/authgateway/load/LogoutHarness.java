@@ -0,0 +1,229 @@
+package com.mochafund.authgateway.load;
+
+import com.mochafund.authgateway.support.LocalGateway;
+import com.mochafund.authgateway.support.StubInternalGateway;
+import com.mochafund.authgateway.support.StubKeycloak;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.cookie.Cookie;
+import org.springframework.boot.convert.DurationStyle;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.ByteBufFlux;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.http.client.HttpClientResponse;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks end to end that a back-channel logout ends the gateway session it names. Each user logs in
+ * through {@link StubKeycloak} from two browsers, with sessions in a real Redis, then the stub posts a
+ * logout token for the first browser's Keycloak session. That browser must stop reaching
+ * {@code /api/**} within {@code timeout} while the second keeps working, and the revocation queue
+ * must report exactly one removed session per logout. Exits non-zero otherwise.
+ * <p>
+ * Needs a real Redis (the docker-compose one works). Options as {@code name=value}:
+ * <pre>
+ * ./mvnw -Pjmh test-compile exec:exec@logout -Dlogout.args="users=50 redis-host=localhost"
+ * </pre>
+ */
+public final class LogoutHarness {
+
+    private static final String REGISTRATION_ID = "auth-gateway";
+    private static final String API_PATH = "/api/identity/users/me";
+
+    private final StubKeycloak keycloak;
+    private final String gatewayUrl;
+    private final HttpClient client = HttpClient.create().followRedirect(false).responseTimeout(Duration.ofSeconds(10));
+
+    private LogoutHarness(StubKeycloak keycloak, String gatewayUrl) {
+        this.keycloak = keycloak;
+        this.gatewayUrl = gatewayUrl;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        Options options = Options.parse(args);
+        System.out.println("Logout options: " + options);
+
+        List<String> failures;
+        try (var keycloak = new StubKeycloak("logout", Duration.ZERO);
+             var internalGateway = new StubInternalGateway(Duration.ZERO);
+             var gateway = LocalGateway.withRedisSessions(keycloak, internalGateway, options.redisHost(), options.redisPort())) {
+            failures = new LogoutHarness(keycloak, gateway.baseUrl())
+                    .run(options, gateway.context().getBean(MeterRegistry.class));
+        }
+        failures.stream().limit(20).forEach(failure -> System.out.println("  FAILED " + failure));
+        System.out.println(failures.isEmpty() ? "All back-channel logouts applied" : failures.size() + " check(s) failed");
+        System.exit(failures.isEmpty() ? 0 : 1);
+    }
+
+    private List<String> run(Options options, MeterRegistry registry) throws InterruptedException {
+        List<String> failures = Collections.synchronizedList(new ArrayList<>());
+        List<User> users = Flux.range(0, options.users())
+                .flatMap(i -> {
+                    User user = new User("logout-user-" + i, new Browser(), new Browser());
+                    // One browser after the other, so the stub's sids are in browser order
+                    return login(user.name(), user.loggedOut()).then(login(user.name(), user.kept())).thenReturn(user);
+                }, 16)
+                .collectList()
+                .block();
+
+        for (User user : users) {
+            for (Browser browser : List.of(user.loggedOut(), user.kept())) {
+                int status = apiStatus(browser);
+                if (status != 200) {
+                    failures.add(user.name() + " got " + status + " from " + API_PATH + " before logging out");
+                }
+            }
+        }
+        if (!failures.isEmpty()) {
+            return failures;
+        }
+
+        double revokedBefore = revokedSessions(registry);
+        Flux.fromIterable(users)
+                .flatMap(user -> backChannelLogout(user.name(), keycloak.sids(user.name()).get(0))
+                        .doOnNext(status -> {
+                            if (status != 200) {
+                                failures.add(user.name() + " back-channel logout answered " + status);
+                            }
+                        }), 16)
+                .blockLast();
+
+        long deadline = System.nanoTime() + options.timeout().toNanos();
+        List<User> pending = new ArrayList<>(users);
+        while (!pending.isEmpty() && System.nanoTime() < deadline) {
+            pending.removeIf(user -> apiStatus(user.loggedOut()) != 200);
+            TimeUnit.MILLISECONDS.sleep(20);
+        }
+        pending.forEach(user -> failures.add(user.name() + " still reached " + API_PATH + " after its back-channel logout"));
+
+        for (User user : users) {
+            int status = apiStatus(user.kept());
+            if (status != 200) {
+                failures.add(user.name() + "'s other session got " + status + " after the first was logged out");
+            }
+        }
+        double revoked = revokedSessions(registry) - revokedBefore;
+        if (revoked != users.size()) {
+            failures.add("authgw.session.revocation-queue.sessions.revoked rose by " + revoked + ", expected " + users.size());
+        }
+        return failures;
+    }
+
+    private Mono<Void> login(String subject, Browser browser) {
+        return redirect(browser, gatewayUrl + "/oauth2/authorization/" + REGISTRATION_ID)
+                .flatMap(idp -> redirect(browser, idp + "&login_hint=" + subject))
+                .flatMap(callback -> redirect(browser, callback))
+                .flatMap(target -> target.contains("error")
+                        ? Mono.error(new IllegalStateException("Login of " + subject + " redirected to " + target))
+                        : Mono.empty());
+    }
+
+    /** Issues a GET that must answer with a redirect and returns the {@code Location}. */
+    private Mono<String> redirect(Browser browser, String url) {
+        boolean toGateway = url.startsWith(gatewayUrl);
+        return client.headers(h -> {
+                    if (toGateway) {
+                        browser.applyCookies(h);
+                    }
+                })
+                .get()
+                .uri(url)
+                .responseSingle((res, body) -> body.then(Mono.defer(() -> {
+                    if (toGateway) {
+                        browser.storeCookies(res);
+                    }
+                    String location = res.responseHeaders().get(HttpHeaderNames.LOCATION);
+                    return res.status().code() == 302 && location != null
+                            ? Mono.just(location)
+                            : Mono.error(new IllegalStateException(url + " returned " + res.status()));
+                })));
+    }
+
+    private int apiStatus(Browser browser) {
+        return client.headers(browser::applyCookies)
+                .get()
+                .uri(gatewayUrl + API_PATH)
+                .responseSingle((res, body) -> body.then(Mono.just(res.status().code())))
+                .block();
+    }
+
+    private Mono<Integer> backChannelLogout(String subject, String sid) {
+        return client.headers(h -> h.set(HttpHeaderNames.CONTENT_TYPE, "application/x-www-form-urlencoded"))
+                .post()
+                .uri(gatewayUrl + "/auth/backchannel-logout")
+                .send(ByteBufFlux.fromString(Mono.just("logout_token=" + keycloak.logoutToken(subject, sid))))
+                .responseSingle((res, body) -> body.then(Mono.just(res.status().code())));
+    }
+
+    private static double revokedSessions(MeterRegistry registry) {
+        Counter counter = registry.find("authgw.session.revocation-queue.sessions.revoked").counter();
+        return counter == null ? 0 : counter.count();
+    }
+
+    private record User(String name, Browser loggedOut, Browser kept) {
+    }
+
+    /** The gateway's cookies for one browser; only the session cookie matters here. */
+    private record Browser(Map<String, String> cookies) {
+
+        Browser() {
+            this(new ConcurrentHashMap<>());
+        }
+
+        void storeCookies(HttpClientResponse response) {
+            for (Set<Cookie> values : response.cookies().values()) {
+                for (Cookie cookie : values) {
+                    if (cookie.value().isEmpty() || cookie.maxAge() == 0) {
+                        cookies.remove(cookie.name());
+                    } else {
+                        cookies.put(cookie.name(), cookie.value());
+                    }
+                }
+            }
+        }
+
+        void applyCookies(HttpHeaders headers) {
+            if (!cookies.isEmpty()) {
+                List<String> pairs = new ArrayList<>(cookies.size());
+                cookies.forEach((name, value) -> pairs.add(name + "=" + value));
+                headers.set(HttpHeaderNames.COOKIE, String.join("; ", pairs));
+            }
+        }
+    }
+
+    record Options(int users, String redisHost, int redisPort, Duration timeout) {
+
+        static Options parse(String[] args) {
+            Map<String, String> values = new HashMap<>();
+            for (String arg : args) {
+                int eq = arg.indexOf('=');
+                if (eq < 1) {
+                    throw new IllegalArgumentException("Expected name=value but got " + arg);
+                }
+                values.put(arg.substring(0, eq), arg.substring(eq + 1));
+            }
+            Options options = new Options(
+                    Integer.parseInt(values.getOrDefault("users", "20")),
+                    values.getOrDefault("redis-host", "localhost"),
+                    Integer.parseInt(values.getOrDefault("redis-port", "6379")),
+                    DurationStyle.detectAndParse(values.getOrDefault("timeout", "5s")));
+            values.keySet().removeAll(Set.of("users", "redis-host", "redis-port", "timeout"));
+            if (!values.isEmpty()) {
+                throw new IllegalArgumentException("Unknown options " + values.keySet());
+            }
+            return options;
+        }
+    }
+}
@@ -0,0 +1,313 @@
+package com.mochafund.authgateway.load;
+
+import com.mochafund.authgateway.AuthGatewayApplication;
+import com.mochafund.authgateway.support.StubInternalGateway;
+import com.mochafund.authgateway.support.StubKeycloak;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import org.springframework.boot.convert.DurationStyle;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Measures time to first proxied request for a fresh gateway JVM: from process start until readiness
+ * reports UP, and until a bearer-authenticated {@code /api/**} request comes back through
+ * {@code TokenRelay} from {@link StubInternalGateway}. Each run forks a new JVM against the same
+ * {@link StubKeycloak}, so the JVM is as cold as a new pod's, and counts the Keycloak calls it made
+ * before answering; these include the startup warmup's connections, which are made on purpose.
+ * <p>
+ * The gateway runs as it ships: the packaged jar (built with {@code -Paot}) is extracted once into
+ * {@code extracted/app.jar} plus {@code extracted/lib}, as the Dockerfile's {@code aot-cds} stage
+ * does, since the JVM will not dump a class-data-sharing archive for a classpath with directories on
+ * it. Sessions go to a real Redis (the docker-compose one works) under their own namespace.
+ * <p>
+ * {@code snapshot=cold} deletes the OIDC provider snapshot before each run, {@code warm} keeps the
+ * one the previous run wrote, {@code both} runs each. {@code aot=true} adds runs with
+ * {@code -Dspring.aot.enabled=true}; {@code cds=true} adds a training run that dumps a CDS archive
+ * for each of those, then runs again with it. Options as {@code name=value}:
+ * <pre>
+ * ./mvnw -Paot package -DskipTests
+ * ./mvnw -Pjmh test-compile exec:exec@startup -Dstartup.args="runs=5 keycloak-latency=100ms aot=true cds=true"
+ * </pre>
+ */
+public final class StartupHarness {
+
+    private static final String AOT = "-Dspring.aot.enabled=true";
+    // Boot's startup line, e.g. "Started AuthGatewayApplication in 1.9 seconds (process running for 2.3)"
+    private static final Pattern STARTED = Pattern.compile("Started .* \\(process running for ([0-9.]+)\\)");
+
+    public static void main(String[] args) throws Exception {
+        Options options = Options.parse(args);
+        System.out.println("Startup options: " + options);
+
+        Path dir = Files.createTempDirectory("auth-gateway-startup");
+        Path snapshot = dir.resolve("oidc-provider.json");
+        Path app = extract(options.jar(), dir.resolve("extracted"));
+
+        try (var keycloak = new StubKeycloak("startup", options.keycloakLatency());
+             var internalGateway = new StubInternalGateway(Duration.ZERO)) {
+            String bearer = "Bearer " + keycloak.accessToken("service-account-startup");
+            var launcher = new Launcher(app, keycloak, internalGateway, snapshot, bearer, options);
+
+            // variant -> JVM arguments
+            Map<String, List<String>> variants = new LinkedHashMap<>();
+            variants.put("default", List.of());
+            if (options.aot()) {
+                variants.put("aot", List.of(AOT));
+            }
+            if (options.cds()) {
+                for (String base : List.copyOf(variants.keySet())) {
+                    Path archive = dir.resolve(base + ".jsa");
+                    launcher.train(archive, variants.get(base));
+                    List<String> jvmArgs = new ArrayList<>(variants.get(base));
+                    jvmArgs.add("-XX:SharedArchiveFile=" + archive);
+                    variants.put(base.equals("default") ? "cds" : base + "-cds", jvmArgs);
+                }
+            }
+            for (Map.Entry<String, List<String>> variant : variants.entrySet()) {
+                List<String> jvmArgs = variant.getValue();
+                for (String mode : options.modes()) {
+                    if (mode.equals("warm") && !Files.exists(snapshot)) {
+                        launcher.run(jvmArgs);
+                    }
+                    List<Run> runs = new ArrayList<>();
+                    for (int i = 0; i < options.runs(); i++) {
+                        if (mode.equals("cold")) {
+                            Files.deleteIfExists(snapshot);
+                        }
+                        runs.add(launcher.run(jvmArgs));
+                    }
+                    report(variant.getKey() + "/" + mode, runs);
+                }
+            }
+        }
+        System.exit(0);
+    }
+
+    /** Unpacks the fat jar the way the Dockerfile does and returns {@code extracted/app.jar}. */
+    private static Path extract(Path jar, Path destination) throws IOException, InterruptedException {
+        if (!Files.isRegularFile(jar)) {
+            throw new IllegalStateException(jar + " not found; build it first with ./mvnw -Paot package -DskipTests");
+        }
+        Process process = new ProcessBuilder(java(), "-Djarmode=tools", "-jar", jar.toString(),
+                "extract", "--destination", destination.toString())
+                .redirectErrorStream(true)
+                .start();
+        String output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+        Path app = destination.resolve("app.jar");
+        if (process.waitFor() != 0 || !Files.isRegularFile(app)) {
+            throw new IllegalStateException("Could not extract " + jar + ":\n" + output);
+        }
+        return app;
+    }
+
+    private static String java() {
+        return Path.of(System.getProperty("java.home"), "bin", "java").toString();
+    }
+
+    private static void report(String name, List<Run> runs) {
+        System.out.printf("%n%-14s %12s %12s %12s %10s %10s%n", name, "started ms", "ready ms", "proxied ms", "discovery", "certs");
+        for (Run run : runs) {
+            System.out.printf("%-14s %12d %12d %12d %10d %10d%n", "",
+                    run.startedMillis(), run.readyMillis(), run.proxiedMillis(), run.discoveryCalls(), run.certsCalls());
+        }
+        long[] proxied = runs.stream().mapToLong(Run::proxiedMillis).sorted().toArray();
+        System.out.printf("%-14s proxied min %d  median %d  max %d ms%n", "",
+                proxied[0], proxied[proxied.length / 2], proxied[proxied.length - 1]);
+    }
+
+    private record Run(long startedMillis, long readyMillis, long proxiedMillis, long discoveryCalls, long certsCalls) {
+    }
+
+    private static final class Launcher {
+
+        private final Path app;
+        private final StubKeycloak keycloak;
+        private final StubInternalGateway internalGateway;
+        private final Path snapshot;
+        private final String bearer;
+        private final Options options;
+        private final HttpClient client = HttpClient.create().responseTimeout(Duration.ofSeconds(5));
+
+        Launcher(Path app, StubKeycloak keycloak, StubInternalGateway internalGateway, Path snapshot, String bearer, Options options) {
+            this.app = app;
+            this.keycloak = keycloak;
+            this.internalGateway = internalGateway;
+            this.snapshot = snapshot;
+            this.bearer = bearer;
+            this.options = options;
+        }
+
+        /**
+         * Boots the context once with {@code spring.context.exit=onRefresh} to record which classes it
+         * loads, with the same {@code variantJvmArgs} the archive will be used with.
+         */
+        void train(Path archive, List<String> variantJvmArgs) throws IOException, InterruptedException {
+            List<String> jvmArgs = new ArrayList<>(variantJvmArgs);
+            jvmArgs.addAll(List.of("-XX:ArchiveClassesAtExit=" + archive, "-Dspring.context.exit=onRefresh"));
+            Process process = start(jvmArgs, freePort());
+            drain(process);
+            if (!process.waitFor(2, TimeUnit.MINUTES) || !Files.exists(archive)) {
+                process.destroyForcibly();
+                throw new IllegalStateException("CDS training run did not write " + archive);
+            }
+        }
+
+        Run run(List<String> extraJvmArgs) throws IOException, InterruptedException {
+            Map<String, Long> callsBefore = keycloak.calls();
+            long start = System.nanoTime();
+            int port = freePort();
+            Process process = start(extraJvmArgs, port);
+            try {
+                var output = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+                long started = -1;
+                for (String line = output.readLine(); line != null; line = output.readLine()) {
+                    Matcher matcher = STARTED.matcher(line);
+                    if (matcher.find()) {
+                        started = Math.round(Double.parseDouble(matcher.group(1)) * 1000);
+                        break;
+                    }
+                }
+                if (started < 0) {
+                    throw new IllegalStateException("Gateway exited with " + process.waitFor() + " before it started");
+                }
+                drain(process);
+                String baseUrl = "http://localhost:" + port;
+
+                // Started is logged before the runners, so readiness may still be OUT_OF_SERVICE
+                awaitStatus(baseUrl + "/actuator/health/readiness", null);
+                long ready = System.nanoTime();
+                awaitStatus(baseUrl + "/api/startup", bearer);
+                long proxied = System.nanoTime();
+
+                Map<String, Long> calls = keycloak.calls();
+                return new Run(started, millis(ready - start), millis(proxied - start),
+                        calls.getOrDefault("discovery", 0L) - callsBefore.getOrDefault("discovery", 0L),
+                        calls.getOrDefault("certs", 0L) - callsBefore.getOrDefault("certs", 0L));
+            } finally {
+                process.destroy();
+                if (!process.waitFor(30, TimeUnit.SECONDS)) {
+                    process.destroyForcibly();
+                }
+            }
+        }
+
+        private Process start(List<String> extraJvmArgs, int port) throws IOException {
+            List<String> command = new ArrayList<>();
+            command.add(java());
+            command.addAll(options.jvmArgs());
+            command.addAll(extraJvmArgs);
+            command.addAll(List.of("-jar", app.toString(),
+                    "--PORT=" + port,
+                    "--KEYCLOAK_BASE_URI=" + keycloak.baseUrl(),
+                    "--KEYCLOAK_ENVIRONMENT=" + keycloak.realm(),
+                    "--AUTH_GATEWAY_CLIENT_SECRET=local",
+                    "--INTERNAL_GATEWAY_URI=" + internalGateway.baseUrl(),
+                    "--KAFKA_BOOTSTRAP_SERVERS=localhost:9",
+                    "--spring.kafka.listener.auto-startup=false",
+                    "--spring.data.redis.host=" + options.redisHost(),
+                    "--spring.data.redis.port=" + options.redisPort(),
+                    "--spring.session.redis.namespace=authgw-startup:sessions",
+                    "--mochafund.oidc.snapshot.path=" + snapshot,
+                    "--logging.level.root=WARN",
+                    "--logging.level." + AuthGatewayApplication.class.getName() + "=INFO"));
+            return new ProcessBuilder(command).redirectErrorStream(true).start();
+        }
+
+        private static int freePort() throws IOException {
+            try (var socket = new ServerSocket(0)) {
+                return socket.getLocalPort();
+            }
+        }
+
+        private void awaitStatus(String url, String authorization) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.MINUTES.toNanos(2);
+            while (System.nanoTime() < deadline) {
+                Integer status = client.headers(h -> {
+                            if (authorization != null) {
+                                h.set(HttpHeaderNames.AUTHORIZATION, authorization);
+                            }
+                        })
+                        .get()
+                        .uri(url)
+                        .responseSingle((res, body) -> body.then(Mono.just(res.status().code())))
+                        .onErrorResume(ex -> Mono.just(-1))
+                        .block();
+                if (status != null && status == 200) {
+                    return;
+                }
+                TimeUnit.MILLISECONDS.sleep(5);
+            }
+            throw new IllegalStateException(url + " did not answer 200 within 2 minutes");
+        }
+
+        /** Keeps reading the child's output so it never blocks on a full pipe. */
+        private static void drain(Process process) {
+            Thread.ofVirtual().start(() -> {
+                try (var in = process.getInputStream()) {
+                    in.transferTo(OutputStream.nullOutputStream());
+                } catch (IOException ignored) {
+                    // The child is gone
+                }
+            });
+        }
+
+        private static long millis(long nanos) {
+            return TimeUnit.NANOSECONDS.toMillis(nanos);
+        }
+    }
+
+    record Options(int runs, List<String> modes, boolean aot, boolean cds, Duration keycloakLatency,
+                   Path jar, String redisHost, int redisPort, List<String> jvmArgs) {
+
+        static Options parse(String[] args) {
+            Map<String, String> values = new HashMap<>();
+            for (String arg : args) {
+                int eq = arg.indexOf('=');
+                if (eq < 1) {
+                    throw new IllegalArgumentException("Expected name=value but got " + arg);
+                }
+                values.put(arg.substring(0, eq), arg.substring(eq + 1));
+            }
+            String snapshot = values.getOrDefault("snapshot", "both");
+            Options options = new Options(
+                    Integer.parseInt(values.getOrDefault("runs", "5")),
+                    snapshot.equals("both") ? List.of("cold", "warm") : List.of(snapshot),
+                    Boolean.parseBoolean(values.getOrDefault("aot", "false")),
+                    Boolean.parseBoolean(values.getOrDefault("cds", "false")),
+                    DurationStyle.detectAndParse(values.getOrDefault("keycloak-latency", "50ms")),
+                    Path.of(values.getOrDefault("jar", "target/auth-gateway-0.0.1-SNAPSHOT.jar")),
+                    values.getOrDefault("redis-host", "localhost"),
+                    Integer.parseInt(values.getOrDefault("redis-port", "6379")),
+                    // Comma-separated, e.g. jvm-args=-Xmx512m,-XX:TieredStopAtLevel=1
+                    values.containsKey("jvm-args") ? List.of(values.get("jvm-args").split(",")) : List.of());
+            if (!Set.of("cold", "warm", "both").contains(snapshot)) {
+                throw new IllegalArgumentException("snapshot must be cold, warm or both");
+            }
+            values.keySet().removeAll(Set.of("runs", "snapshot", "aot", "cds", "keycloak-latency", "jar",
+                    "redis-host", "redis-port", "jvm-args"));
+            if (!values.isEmpty()) {
+                throw new IllegalArgumentException("Unknown options " + values.keySet());
+            }
+            return options;
+        }
+    }
+}
@@ -0,0 +1,286 @@
+package com.mochafund.authgateway.load;
+
+import com.mochafund.authgateway.support.LocalGateway;
+import com.mochafund.authgateway.support.StubInternalGateway;
+import com.mochafund.authgateway.support.StubKeycloak;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.util.ResourceLeakDetector;
+import io.netty.util.ResourceLeakDetectorFactory;
+import org.springframework.util.unit.DataSize;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * Streams large bodies through the real gateway's {@code /api/**} route in both directions: downloads
+ * from {@link StubInternalGateway}'s {@code GET /api/files/{bytes}} and uploads to its
+ * {@code POST /api/files}, authenticated with a bearer token so {@code TokenRelay} and the route's
+ * header filters all run. Reports MB/s per direction, heap and pooled direct memory at rest and at
+ * peak, GC activity, and the gateway's {@code authgw.gateway.body.*} meters.
+ * <p>
+ * Netty leak detection runs at {@code leak-detection} level (default {@code advanced}) with a counting
+ * detector; the run exits non-zero if any buffer leaked or a body arrived short. Options as
+ * {@code name=value}; {@code gateway.<property>=value} is passed to the gateway as {@code --<property>=value}:
+ * <pre>
+ * ./mvnw -Pjmh test-compile exec:exec@streaming -Dstreaming.args="size=4GB streams=4"
+ * </pre>
+ */
+public final class StreamingHarness {
+
+    private static final LongAdder LEAKS = new LongAdder();
+
+    public static void main(String[] args) throws Exception {
+        Options options = Options.parse(args);
+        installLeakDetector(options.leakDetection());
+        System.out.println("Streaming options: " + options);
+
+        var sampler = new MemorySampler();
+        try (var keycloak = new StubKeycloak("streaming", Duration.ZERO);
+             var internalGateway = new StubInternalGateway(Duration.ZERO);
+             var gateway = new LocalGateway(keycloak, internalGateway, options.gatewayArgs().toArray(String[]::new))) {
+
+            String bearer = "Bearer " + keycloak.accessToken("service-account-streaming");
+            HttpClient client = HttpClient.create(ConnectionProvider.create("streaming", options.streams() * 2))
+                    .baseUrl(gateway.baseUrl())
+                    .headers(h -> h.set(HttpHeaderNames.AUTHORIZATION, bearer));
+            long perStream = options.size().toBytes() / options.streams();
+
+            // A small warmup round so the measured runs do not include JIT and pool growth
+            download(client, Math.min(perStream, 64L << 20), options.streams());
+            upload(client, Math.min(perStream, 64L << 20), options.streams());
+            long uploadedBefore = internalGateway.uploadedBytes();
+
+            sampler.settle();
+            sampler.start();
+            Result down = download(client, perStream, options.streams());
+            Result up = upload(client, perStream, options.streams());
+            sampler.stop();
+            long uploaded = internalGateway.uploadedBytes() - uploadedBefore;
+
+            sampler.settle();
+            triggerLeakReports();
+
+            System.out.printf("%nDownload  %,15d bytes  %8.1f MB/s  (%d streams)%n", down.bytes(), down.mbPerSecond(), options.streams());
+            System.out.printf("Upload    %,15d bytes  %8.1f MB/s  (%d streams, upstream received %,d)%n",
+                    up.bytes(), up.mbPerSecond(), options.streams(), uploaded);
+            sampler.report();
+            reportMeters(gateway.context().getBean(MeterRegistry.class));
+            System.out.printf("%nLeaked buffers: %d (detection %s)%n", LEAKS.sum(), options.leakDetection());
+
+            long expected = perStream * options.streams();
+            boolean ok = LEAKS.sum() == 0 && down.bytes() == expected && up.bytes() == expected && uploaded == expected;
+            if (!ok) {
+                System.out.println("FAILED: leaked buffers or short bodies");
+            }
+            System.exit(ok ? 0 : 1);
+        }
+    }
+
+    private static Result download(HttpClient client, long bytesPerStream, int streams) {
+        LongAdder received = new LongAdder();
+        long start = System.nanoTime();
+        Flux.range(0, streams)
+                .flatMap(i -> client.get()
+                        .uri("/api/files/" + bytesPerStream)
+                        .responseConnection((res, conn) -> res.status().code() == 200
+                                ? conn.inbound().receive().doOnNext(buf -> received.add(buf.readableBytes())).then()
+                                : Mono.error(new IllegalStateException("Download returned " + res.status()))))
+                .then()
+                .block();
+        return new Result(received.sum(), System.nanoTime() - start);
+    }
+
+    private static Result upload(HttpClient client, long bytesPerStream, int streams) {
+        LongAdder sent = new LongAdder();
+        long start = System.nanoTime();
+        Flux.range(0, streams)
+                .flatMap(i -> client.headers(h -> h.set(HttpHeaderNames.CONTENT_TYPE, "application/octet-stream")
+                                .set(HttpHeaderNames.CONTENT_LENGTH, Long.toString(bytesPerStream)))
+                        .post()
+                        .uri("/api/files")
+                        .send(StubInternalGateway.chunks(bytesPerStream).doOnNext(buf -> sent.add(buf.readableBytes())))
+                        .responseSingle((res, body) -> body.then(res.status().code() == 204
+                                ? Mono.empty()
+                                : Mono.error(new IllegalStateException("Upload returned " + res.status())))))
+                .then()
+                .block();
+        return new Result(sent.sum(), System.nanoTime() - start);
+    }
+
+    private static void installLeakDetector(ResourceLeakDetector.Level level) {
+        ResourceLeakDetector.setLevel(level);
+        ResourceLeakDetectorFactory.setResourceLeakDetectorFactory(new ResourceLeakDetectorFactory() {
+            @Override
+            @SuppressWarnings("deprecation")
+            public <T> ResourceLeakDetector<T> newResourceLeakDetector(Class<T> resource, int samplingInterval, long maxActive) {
+                return new ResourceLeakDetector<>(resource, samplingInterval, maxActive) {
+                    @Override
+                    protected void reportTracedLeak(String resourceType, String records) {
+                        LEAKS.increment();
+                        super.reportTracedLeak(resourceType, records);
+                    }
+
+                    @Override
+                    protected void reportUntracedLeak(String resourceType) {
+                        LEAKS.increment();
+                        super.reportUntracedLeak(resourceType);
+                    }
+                };
+            }
+        });
+    }
+
+    /** Leaks are reported when a later allocation finds a collected, unreleased buffer. */
+    private static void triggerLeakReports() throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            TimeUnit.MILLISECONDS.sleep(200);
+            for (int j = 0; j < 1024; j++) {
+                PooledByteBufAllocator.DEFAULT.directBuffer(1024).release();
+            }
+        }
+    }
+
+    private static void reportMeters(MeterRegistry registry) {
+        System.out.println("\nGateway body meters:");
+        registry.getMeters().stream()
+                .filter(m -> m.getId().getName().startsWith("authgw.gateway.body."))
+                .sorted((a, b) -> a.getId().toString().compareTo(b.getId().toString()))
+                .forEach(m -> System.out.printf("  %-40s %-32s %s%n", m.getId().getName(), tagsOf(m), valuesOf(m)));
+    }
+
+    private static String tagsOf(Meter meter) {
+        return meter.getId().getTags().stream()
+                .filter(tag -> !tag.getKey().equals("application"))
+                .map(tag -> tag.getKey() + "=" + tag.getValue())
+                .collect(Collectors.joining(","));
+    }
+
+    private static String valuesOf(Meter meter) {
+        List<String> values = new ArrayList<>();
+        meter.measure().forEach(m -> values.add(m.getStatistic().getTagValueRepresentation() + "=" + String.format("%.0f", m.getValue())));
+        return String.join(" ", values);
+    }
+
+    private record Result(long bytes, long nanos) {
+        double mbPerSecond() {
+            return bytes / 1e6 / (nanos / 1e9);
+        }
+    }
+
+    /** Samples heap and Netty's pooled direct memory every 20 ms while a run is in progress. */
+    private static final class MemorySampler {
+        private final AtomicLong peakHeap = new AtomicLong();
+        private final AtomicLong peakDirect = new AtomicLong();
+        private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "memory-sampler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        private long heapAtRest;
+        private long directAtRest;
+        private long gcCountBefore;
+        private long gcMillisBefore;
+        private long gcCount;
+        private long gcMillis;
+
+        void settle() throws InterruptedException {
+            System.gc();
+            TimeUnit.MILLISECONDS.sleep(200);
+        }
+
+        void start() {
+            heapAtRest = heapUsed();
+            directAtRest = directUsed();
+            peakHeap.set(heapAtRest);
+            peakDirect.set(directAtRest);
+            gcCountBefore = gcCount();
+            gcMillisBefore = gcMillis();
+            executor.scheduleAtFixedRate(() -> {
+                peakHeap.accumulateAndGet(heapUsed(), Math::max);
+                peakDirect.accumulateAndGet(directUsed(), Math::max);
+            }, 0, 20, TimeUnit.MILLISECONDS);
+        }
+
+        void stop() {
+            executor.shutdownNow();
+            gcCount = gcCount() - gcCountBefore;
+            gcMillis = gcMillis() - gcMillisBefore;
+        }
+
+        void report() {
+            System.out.printf("%nHeap used     at rest %7.1f MB  peak %7.1f MB  after %7.1f MB%n",
+                    mb(heapAtRest), mb(peakHeap.get()), mb(heapUsed()));
+            System.out.printf("Pooled direct at rest %7.1f MB  peak %7.1f MB  after %7.1f MB%n",
+                    mb(directAtRest), mb(peakDirect.get()), mb(directUsed()));
+            System.out.printf("GC during run: %d collections, %d ms%n", gcCount, gcMillis);
+        }
+
+        private static long heapUsed() {
+            return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+        }
+
+        private static long directUsed() {
+            return PooledByteBufAllocator.DEFAULT.metric().usedDirectMemory();
+        }
+
+        private static long gcCount() {
+            return ManagementFactory.getGarbageCollectorMXBeans().stream().mapToLong(GarbageCollectorMXBean::getCollectionCount).sum();
+        }
+
+        private static long gcMillis() {
+            return ManagementFactory.getGarbageCollectorMXBeans().stream().mapToLong(GarbageCollectorMXBean::getCollectionTime).sum();
+        }
+
+        private static double mb(long bytes) {
+            return bytes / 1e6;
+        }
+    }
+
+    record Options(DataSize size, int streams, ResourceLeakDetector.Level leakDetection, List<String> gatewayArgs) {
+
+        static Options parse(String[] args) {
+            Map<String, String> values = new HashMap<>();
+            List<String> gatewayArgs = new ArrayList<>();
+            for (String arg : args) {
+                int eq = arg.indexOf('=');
+                if (eq < 1) {
+                    throw new IllegalArgumentException("Expected name=value but got " + arg);
+                }
+                if (arg.startsWith("gateway.")) {
+                    gatewayArgs.add("--" + arg.substring("gateway.".length()));
+                } else {
+                    values.put(arg.substring(0, eq), arg.substring(eq + 1));
+                }
+            }
+            Options options = new Options(
+                    DataSize.parse(values.getOrDefault("size", "2GB")),
+                    Integer.parseInt(values.getOrDefault("streams", "4")),
+                    ResourceLeakDetector.Level.valueOf(values.getOrDefault("leak-detection", "advanced").toUpperCase()),
+                    List.copyOf(gatewayArgs));
+            values.keySet().removeAll(List.of("size", "streams", "leak-detection"));
+            if (!values.isEmpty()) {
+                throw new IllegalArgumentException("Unknown options " + values.keySet());
+            }
+            return options;
+        }
+    }
+}
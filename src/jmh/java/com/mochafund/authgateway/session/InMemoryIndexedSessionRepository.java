@@ -0,0 +1,47 @@
+package com.mochafund.authgateway.session;
+
+import org.springframework.session.MapSession;
+import org.springframework.session.ReactiveFindByIndexNameSessionRepository;
+import org.springframework.session.ReactiveSessionRepository;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/** Heap-only stand-in for the indexed Redis repository, so benchmarks measure gateway code rather than Redis. */
+public class InMemoryIndexedSessionRepository implements
+        ReactiveSessionRepository<MapSession>, ReactiveFindByIndexNameSessionRepository<MapSession> {
+
+    private final Map<String, MapSession> sessions = new ConcurrentHashMap<>();
+
+    @Override
+    public Mono<MapSession> createSession() {
+        return Mono.fromSupplier(MapSession::new);
+    }
+
+    @Override
+    public Mono<Void> save(MapSession session) {
+        return Mono.fromRunnable(() -> sessions.put(session.getId(), new MapSession(session)));
+    }
+
+    @Override
+    public Mono<MapSession> findById(String id) {
+        return Mono.fromSupplier(() -> {
+            MapSession session = sessions.get(id);
+            return session == null || session.isExpired() ? null : new MapSession(session);
+        });
+    }
+
+    @Override
+    public Mono<Void> deleteById(String id) {
+        return Mono.fromRunnable(() -> sessions.remove(id));
+    }
+
+    @Override
+    public Mono<Map<String, MapSession>> findByIndexNameAndIndexValue(String indexName, String indexValue) {
+        return Mono.fromSupplier(() -> sessions.values().stream()
+                .filter(s -> indexValue.equals(s.getAttribute(PRINCIPAL_NAME_INDEX_NAME)))
+                .collect(Collectors.toMap(MapSession::getId, MapSession::new)));
+    }
+}
@@ -0,0 +1,81 @@
+package com.mochafund.authgateway.session;
+
+import com.mochafund.authgateway.session.codec.CompactSessionSerializer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.session.MapSession;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Summaries built from full sessions, the way listing worked before projections, against decoding
+ * one field script reply of N sessions with {@link SessionProjectionReader#decode}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SessionListingBenchmark {
+
+    @Param({"1", "50", "5000"})
+    public int sessionCount;
+
+    private List<MapSession> sessions;
+    private List<byte[]> reply;
+    private SessionProjectionReader reader;
+
+    @Setup
+    public void setup() {
+        var serializer = new CompactSessionSerializer(id -> null, CompactSessionSerializer.WriteFormat.COMPACT,
+                getClass().getClassLoader(), new SimpleMeterRegistry());
+        reader = new SessionProjectionReader(null, serializer, "authgw:sessions");
+
+        Instant now = Instant.now();
+        sessions = new ArrayList<>(sessionCount);
+        reply = new ArrayList<>(sessionCount * 4);
+        for (int i = 0; i < sessionCount; i++) {
+            MapSession session = new MapSession();
+            session.setCreationTime(now.minusSeconds(ThreadLocalRandom.current().nextInt(86_400)));
+            session.setLastAccessedTime(now.minusSeconds(ThreadLocalRandom.current().nextInt(3_600)));
+            session.setMaxInactiveInterval(Duration.ofDays(7));
+            sessions.add(session);
+
+            reply.add(session.getId().getBytes(StandardCharsets.UTF_8));
+            reply.add(serializer.serialize(session.getCreationTime().toEpochMilli()));
+            reply.add(serializer.serialize(session.getLastAccessedTime().toEpochMilli()));
+            reply.add(serializer.serialize((int) session.getMaxInactiveInterval().getSeconds()));
+        }
+    }
+
+    @Benchmark
+    public List<SessionsService.SessionSummary> fromFullSessions() {
+        return sessions.stream()
+                .map(SessionsService.SessionSummary::from)
+                .sorted(Comparator.comparing(SessionsService.SessionSummary::lastAccessed).reversed())
+                .toList();
+    }
+
+    @Benchmark
+    public SessionsService.SessionPage decodeProjectionPage() {
+        return reader.decode("0", reply);
+    }
+}
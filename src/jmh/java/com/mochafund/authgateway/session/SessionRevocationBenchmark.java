@@ -0,0 +1,126 @@
+package com.mochafund.authgateway.session;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializationContext;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.session.ReactiveFindByIndexNameSessionRepository;
+import org.springframework.session.data.redis.ReactiveRedisIndexedSessionRepository;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Revoking every session of one principal: the Lua-script path in {@link SessionRevoker} against
+ * the previous findByPrincipalName + deleteById-per-session path. After each script invocation
+ * the namespace is checked to be empty, so a script that leaves sessions behind fails instead of
+ * looking fast.
+ * <p>
+ * Needs a real Redis (the docker-compose one works); point at it with
+ * {@code -Djmh.args="SessionRevocation -jvmArgsAppend -Dredis.host=localhost"}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class SessionRevocationBenchmark {
+
+    private static final String NAMESPACE = "authgw-bench:sessions";
+    private static final String PRINCIPAL = "bench.user@example.com";
+
+    @Param({"1", "50", "5000"})
+    public int sessionCount;
+
+    @Param({"script", "repository"})
+    public String path;
+
+    private LettuceConnectionFactory connectionFactory;
+    private ReactiveRedisIndexedSessionRepository repository;
+    private ReactiveStringRedisTemplate strings;
+    private SessionRevoker revoker;
+    private long revoked;
+
+    @Setup(Level.Trial)
+    public void connect() throws Exception {
+        connectionFactory = new LettuceConnectionFactory(
+                System.getProperty("redis.host", "localhost"), Integer.getInteger("redis.port", 6379));
+        connectionFactory.afterPropertiesSet();
+        connectionFactory.start();
+
+        RedisSerializer<Object> serializer = new JdkSerializationRedisSerializer();
+        RedisSerializationContext<String, Object> context = RedisSerializationContext
+                .<String, Object>newSerializationContext(serializer)
+                .key(RedisSerializer.string())
+                .hashKey(RedisSerializer.string())
+                .build();
+        strings = new ReactiveStringRedisTemplate(connectionFactory);
+        repository = new ReactiveRedisIndexedSessionRepository(new ReactiveRedisTemplate<>(connectionFactory, context), strings);
+        repository.setRedisKeyNamespace(NAMESPACE);
+        repository.disableCleanupTask();
+        repository.afterPropertiesSet();
+
+        revoker = new SessionRevoker(strings, serializer, event -> { }, NAMESPACE);
+    }
+
+    @Setup(Level.Invocation)
+    public void createSessions() {
+        Flux.range(0, sessionCount)
+                .flatMap(i -> repository.createSession()
+                        .flatMap(session -> {
+                            session.setAttribute(ReactiveFindByIndexNameSessionRepository.PRINCIPAL_NAME_INDEX_NAME, PRINCIPAL);
+                            session.setAttribute("payload", "x".repeat(2048));
+                            return repository.save(session);
+                        }), 64)
+                .blockLast();
+    }
+
+    /** The script must leave nothing behind: no session hashes, index entries or expiration entries. */
+    @TearDown(Level.Invocation)
+    public void verify() {
+        List<String> left = "script".equals(path)
+                ? strings.scan(ScanOptions.scanOptions().match(NAMESPACE + ":*").build()).collectList().block()
+                : List.of();
+        if (revoked != sessionCount || !left.isEmpty()) {
+            throw new IllegalStateException("Revoked " + revoked + " of " + sessionCount + " sessions, left " + left);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void disconnect() {
+        repository.destroy();
+        connectionFactory.destroy();
+    }
+
+    @Benchmark
+    public long revoke() {
+        if ("script".equals(path)) {
+            revoked = revoker.revokeByPrincipal(PRINCIPAL).map(ids -> (long) ids.size()).block();
+        } else {
+            revoked = repository.findByPrincipalName(PRINCIPAL)
+                    .flatMapMany(sessions -> Flux.fromIterable(sessions.keySet())
+                            .flatMap(id -> repository.deleteById(id).thenReturn(1L)))
+                    .reduce(0L, Long::sum)
+                    .block();
+        }
+        return revoked;
+    }
+}
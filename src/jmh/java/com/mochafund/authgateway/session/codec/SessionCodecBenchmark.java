@@ -0,0 +1,119 @@
+package com.mochafund.authgateway.session.codec;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextImpl;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.security.oauth2.client.authentication.OAuth2AuthenticationToken;
+import org.springframework.security.oauth2.client.registration.ClientRegistration;
+import org.springframework.security.oauth2.core.AuthorizationGrantType;
+import org.springframework.security.oauth2.core.OAuth2AccessToken;
+import org.springframework.security.oauth2.core.OAuth2RefreshToken;
+import org.springframework.security.oauth2.core.oidc.OidcIdToken;
+import org.springframework.security.oauth2.core.oidc.OidcUserInfo;
+import org.springframework.security.oauth2.core.oidc.user.DefaultOidcUser;
+import org.springframework.security.oauth2.core.oidc.user.OidcUserAuthority;
+
+import java.net.URI;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encode/decode cost of the two heavy session attributes, the security context and the
+ * authorized-client map, for each write format. Bytes per session are printed at setup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SessionCodecBenchmark {
+
+    @Param({"COMPACT", "JDK"})
+    public CompactSessionSerializer.WriteFormat format;
+
+    private CompactSessionSerializer serializer;
+    private SecurityContextImpl securityContext;
+    private Map<String, OAuth2AuthorizedClient> authorizedClients;
+    private byte[] encodedContext;
+    private byte[] encodedClients;
+
+    @Setup
+    public void setup() throws Exception {
+        ClientRegistration registration = ClientRegistration.withRegistrationId("auth-gateway")
+                .clientId("auth-gateway")
+                .authorizationGrantType(AuthorizationGrantType.AUTHORIZATION_CODE)
+                .redirectUri("{baseUrl}/login/oauth2/code/{registrationId}")
+                .authorizationUri("https://keycloak.example.com/realms/mochafund/protocol/openid-connect/auth")
+                .tokenUri("https://keycloak.example.com/realms/mochafund/protocol/openid-connect/token")
+                .userNameAttributeName("preferred_username")
+                .build();
+        serializer = new CompactSessionSerializer(
+                Map.of("auth-gateway", registration)::get, format, getClass().getClassLoader(), new SimpleMeterRegistry());
+
+        Instant now = Instant.now();
+        Map<String, Object> claims = new LinkedHashMap<>();
+        claims.put("iss", URI.create("https://keycloak.example.com/realms/mochafund").toURL());
+        claims.put("sub", "6f1f7d0e-8a8e-4a43-9f55-0a4b1b0c2d3e");
+        claims.put("aud", List.of("auth-gateway"));
+        claims.put("iat", now);
+        claims.put("exp", now.plusSeconds(300));
+        claims.put("sid", "0b3c2d1e-5f6a-7b8c-9d0e-1f2a3b4c5d6e");
+        claims.put("email", "jane.doe@example.com");
+        claims.put("email_verified", true);
+        claims.put("preferred_username", "jane.doe@example.com");
+        claims.put("given_name", "Jane");
+        claims.put("family_name", "Doe");
+        OidcIdToken idToken = new OidcIdToken("eyJhbGciOiJSUzI1NiJ9." + "x".repeat(900), now, now.plusSeconds(300), claims);
+        OidcUserInfo userInfo = new OidcUserInfo(Map.of("sub", claims.get("sub"), "email", claims.get("email")));
+        var authorities = List.of(
+                new OidcUserAuthority(idToken, userInfo),
+                new SimpleGrantedAuthority("SCOPE_openid"),
+                new SimpleGrantedAuthority("SCOPE_profile"),
+                new SimpleGrantedAuthority("SCOPE_email"));
+        var user = new DefaultOidcUser(authorities, idToken, userInfo, "preferred_username");
+        securityContext = new SecurityContextImpl(new OAuth2AuthenticationToken(user, authorities, "auth-gateway"));
+
+        var accessToken = new OAuth2AccessToken(OAuth2AccessToken.TokenType.BEARER,
+                "eyJhbGciOiJSUzI1NiJ9." + "a".repeat(1400), now, now.plusSeconds(300), Set.of("openid", "profile", "email"));
+        var refreshToken = new OAuth2RefreshToken("eyJhbGciOiJIUzUxMiJ9." + "r".repeat(600), now);
+        authorizedClients = new HashMap<>();
+        authorizedClients.put("auth-gateway",
+                new OAuth2AuthorizedClient(registration, "jane.doe@example.com", accessToken, refreshToken));
+
+        encodedContext = serializer.serialize(securityContext);
+        encodedClients = serializer.serialize(authorizedClients);
+        System.out.printf("%n[%s] bytes/session: security-context=%d authorized-clients=%d total=%d%n",
+                format, encodedContext.length, encodedClients.length, encodedContext.length + encodedClients.length);
+    }
+
+    @Benchmark
+    public void encode(Blackhole bh) {
+        bh.consume(serializer.serialize(securityContext));
+        bh.consume(serializer.serialize(authorizedClients));
+    }
+
+    @Benchmark
+    public void decode(Blackhole bh) {
+        bh.consume(serializer.deserialize(encodedContext));
+        bh.consume(serializer.deserialize(encodedClients));
+    }
+}
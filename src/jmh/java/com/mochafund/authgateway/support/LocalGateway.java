@@ -0,0 +1,80 @@
+package com.mochafund.authgateway.support;
+
+import com.mochafund.authgateway.AuthGatewayApplication;
+import com.mochafund.authgateway.session.InMemoryIndexedSessionRepository;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.session.config.annotation.web.server.SpringWebSessionConfiguration;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The real application context wired to {@link StubKeycloak} and {@link StubInternalGateway}, with
+ * the session store on the heap ({@link InMemoryIndexedSessionRepository}) instead of Redis and the
+ * Kafka listeners left stopped. Nothing outside the JVM is needed, except with
+ * {@link #withRedisSessions}, which keeps sessions in a real Redis for what the heap store cannot
+ * stand in for, such as revocation through the session indexes.
+ */
+public class LocalGateway implements AutoCloseable {
+
+    private final ConfigurableApplicationContext context;
+
+    public LocalGateway(StubKeycloak keycloak, StubInternalGateway internalGateway, String... extraArgs) {
+        this(keycloak.baseUrl(), keycloak.realm(), internalGateway.baseUrl(), true, extraArgs);
+    }
+
+    /** Sessions in the Redis at {@code redisHost:redisPort}, under their own namespace, as in production. */
+    public static LocalGateway withRedisSessions(
+            StubKeycloak keycloak, StubInternalGateway internalGateway, String redisHost, int redisPort, String... extraArgs) {
+        List<String> args = new ArrayList<>(List.of(
+                "--spring.data.redis.host=" + redisHost,
+                "--spring.data.redis.port=" + redisPort,
+                "--spring.session.redis.namespace=authgw-local:sessions"));
+        args.addAll(List.of(extraArgs));
+        return new LocalGateway(keycloak.baseUrl(), keycloak.realm(), internalGateway.baseUrl(), false,
+                args.toArray(String[]::new));
+    }
+
+    private LocalGateway(
+            String keycloakBaseUrl, String realm, String internalGatewayUrl, boolean heapSessions, String... extraArgs) {
+        // Command-line args rather than builder defaults so they win over application.yml
+        List<String> args = new ArrayList<>(List.of(
+                "--PORT=0",
+                "--KEYCLOAK_BASE_URI=" + keycloakBaseUrl,
+                "--KEYCLOAK_ENVIRONMENT=" + realm,
+                "--AUTH_GATEWAY_CLIENT_SECRET=local",
+                "--INTERNAL_GATEWAY_URI=" + internalGatewayUrl,
+                "--KAFKA_BOOTSTRAP_SERVERS=localhost:9",
+                "--spring.kafka.listener.auto-startup=false",
+                "--mochafund.session.near-cache.enabled=false",
+                "--mochafund.startup.warmup.redis-connections=0",
+                "--logging.level.root=WARN"));
+        args.addAll(List.of(extraArgs));
+
+        this.context = new SpringApplicationBuilder(AuthGatewayApplication.class)
+                .initializers(ctx -> {
+                    if (heapSessions) {
+                        var generic = (GenericApplicationContext) ctx;
+                        generic.registerBean(InMemoryIndexedSessionRepository.class);
+                        generic.registerBean(SpringWebSessionConfiguration.class);
+                    }
+                })
+                .run(args.toArray(String[]::new));
+    }
+
+    public String baseUrl() {
+        return "http://localhost:" + ((WebServerApplicationContext) context).getWebServer().getPort();
+    }
+
+    public ConfigurableApplicationContext context() {
+        return context;
+    }
+
+    @Override
+    public void close() {
+        context.close();
+    }
+}
@@ -0,0 +1,97 @@
+package com.mochafund.authgateway.support;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Stand-in for the internal gateway behind {@code /api/**}: the identity bootstrap call answers
+ * {@code 204} and every other API path a small JSON body, optionally after a fixed latency.
+ * {@code POST /api/files} drains the upload and {@code GET /api/files/{bytes}} streams that many
+ * bytes back, both without holding more than one chunk, for the streaming harness.
+ */
+public class StubInternalGateway implements AutoCloseable {
+
+    private static final ByteBuf CHUNK = Unpooled.unreleasableBuffer(
+            Unpooled.directBuffer(64 * 1024).writeZero(64 * 1024));
+
+    private final Duration latency;
+    private final LongAdder bootstraps = new LongAdder();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder uploaded = new LongAdder();
+    private final DisposableServer server;
+
+    public StubInternalGateway(Duration latency) {
+        this.latency = latency;
+        this.server = HttpServer.create()
+                .port(0)
+                .route(routes -> routes
+                        .post("/api/identity/users/bootstrap", (req, res) -> {
+                            bootstraps.increment();
+                            return delayed(res.status(HttpResponseStatus.NO_CONTENT).send());
+                        })
+                        .post("/api/files", (req, res) -> req.receive()
+                                .doOnNext(buf -> uploaded.add(buf.readableBytes()))
+                                .then(res.status(HttpResponseStatus.NO_CONTENT).send()))
+                        .get("/api/files/{bytes}", (req, res) -> {
+                            long bytes = Long.parseLong(req.param("bytes"));
+                            return res.header(HttpHeaderNames.CONTENT_TYPE, "application/octet-stream")
+                                    .header(HttpHeaderNames.CONTENT_LENGTH, Long.toString(bytes))
+                                    .send(chunks(bytes))
+                                    .then();
+                        })
+                        .route(req -> req.uri().startsWith("/api/"), (req, res) -> {
+                            requests.increment();
+                            return delayed(res.header(HttpHeaderNames.CONTENT_TYPE, "application/json")
+                                    .sendString(Mono.just("{\"ok\":true}"))
+                                    .then());
+                        }))
+                .bindNow();
+    }
+
+    public String baseUrl() {
+        return "http://localhost:" + server.port();
+    }
+
+    public long bootstraps() {
+        return bootstraps.sum();
+    }
+
+    public long requests() {
+        return requests.sum();
+    }
+
+    public long uploadedBytes() {
+        return uploaded.sum();
+    }
+
+    /** {@code bytes} of filler as retained slices of one shared chunk, so the stub itself allocates nothing per chunk. */
+    public static Flux<ByteBuf> chunks(long bytes) {
+        return Flux.generate(() -> bytes, (remaining, sink) -> {
+            if (remaining <= 0) {
+                sink.complete();
+                return remaining;
+            }
+            int size = (int) Math.min(CHUNK.readableBytes(), remaining);
+            sink.next(CHUNK.retainedSlice(0, size));
+            return remaining - size;
+        });
+    }
+
+    @Override
+    public void close() {
+        server.disposeNow();
+    }
+
+    private Mono<Void> delayed(Mono<Void> response) {
+        return latency.isZero() ? response : Mono.delay(latency).then(response);
+    }
+}
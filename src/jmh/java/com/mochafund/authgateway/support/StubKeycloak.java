@@ -0,0 +1,264 @@
+package com.mochafund.authgateway.support;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.crypto.RSASSASigner;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.QueryStringDecoder;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.http.server.HttpServerRequest;
+import reactor.netty.http.server.HttpServerResponse;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * Just enough of a Keycloak realm for the gateway to run its real login sequence: OIDC discovery,
+ * JWKS, an authorization endpoint that approves immediately, and a token endpoint for the
+ * {@code authorization_code} and {@code refresh_token} grants. Tokens are RS256 JWTs signed with a
+ * key generated per instance. Once a subject has used the refresh grant (which the gateway does right
+ * after bootstrapping a user), all its tokens carry a {@code userId} claim, as in the real realm.
+ * <p>
+ * The authorization endpoint reads the subject from a {@code login_hint} parameter and falls back to
+ * a random one. Each ID token names a new Keycloak session ({@code sid}), kept per subject in issue
+ * order for back-channel logout tokens. Every endpoint can be slowed down by a fixed latency to
+ * approximate a remote IdP.
+ */
+public class StubKeycloak implements AutoCloseable {
+
+    public static final String CLIENT_ID = "auth-gateway";
+
+    private final String realm;
+    private final Duration latency;
+    private final RSAKey signingKey;
+    private final String jwks;
+    private final Map<String, PendingCode> codes = new ConcurrentHashMap<>();
+    private final Map<String, String> refreshTokens = new ConcurrentHashMap<>();
+    private final Set<String> bootstrapped = ConcurrentHashMap.newKeySet();
+    private final Map<String, List<String>> sids = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> calls = new ConcurrentHashMap<>();
+    private final DisposableServer server;
+
+    public StubKeycloak(String realm, Duration latency) {
+        this.realm = realm;
+        this.latency = latency;
+        try {
+            this.signingKey = new RSAKeyGenerator(2048).keyID("stub-" + realm).generate();
+        } catch (JOSEException e) {
+            throw new IllegalStateException(e);
+        }
+        this.jwks = new JWKSet(signingKey.toPublicJWK()).toString();
+
+        String prefix = "/realms/" + realm;
+        this.server = HttpServer.create()
+                .port(0)
+                .route(routes -> routes
+                        .get(prefix + "/.well-known/openid-configuration", (req, res) -> json(res, "discovery", discovery()))
+                        .get(prefix + "/protocol/openid-connect/certs", (req, res) -> json(res, "certs", jwks))
+                        .get(prefix + "/protocol/openid-connect/auth", this::authorize)
+                        .post(prefix + "/protocol/openid-connect/token", this::token)
+                        .get(prefix + "/protocol/openid-connect/userinfo", this::userInfo))
+                .bindNow();
+    }
+
+    public String baseUrl() {
+        return "http://localhost:" + server.port();
+    }
+
+    public String issuer() {
+        return baseUrl() + "/realms/" + realm;
+    }
+
+    public String realm() {
+        return realm;
+    }
+
+    /** Number of requests served per endpoint since start. */
+    public Map<String, Long> calls() {
+        return calls.entrySet().stream().collect(Collectors.toMap(Map.Entry::getKey, e -> e.getValue().sum()));
+    }
+
+    /** An access token for {@code subject} as the realm would issue it to a service account. */
+    public String accessToken(String subject) {
+        return sign(claims(subject, TimeUnit.HOURS.toSeconds(2)).build());
+    }
+
+    @Override
+    public void close() {
+        server.disposeNow();
+    }
+
+    private Mono<Void> authorize(HttpServerRequest req, HttpServerResponse res) {
+        Map<String, String> params = single(new QueryStringDecoder(req.uri()).parameters());
+        String subject = params.getOrDefault("login_hint", "user-" + UUID.randomUUID());
+        String code = UUID.randomUUID().toString();
+        codes.put(code, new PendingCode(subject, params.get("nonce")));
+
+        String location = params.get("redirect_uri") + "?code=" + code + "&state=" + params.get("state");
+        return delayed("auth", res.status(HttpResponseStatus.FOUND)
+                .header(HttpHeaderNames.LOCATION, location)
+                .send());
+    }
+
+    private Mono<Void> token(HttpServerRequest req, HttpServerResponse res) {
+        return req.receive().aggregate().asString(StandardCharsets.UTF_8)
+                .map(body -> single(new QueryStringDecoder(body, false).parameters()))
+                .flatMap(form -> switch (form.getOrDefault("grant_type", "")) {
+                    case "authorization_code" -> {
+                        PendingCode pending = codes.remove(form.get("code"));
+                        yield pending == null
+                                ? error(res, "invalid_grant")
+                                : json(res, "token", tokenResponse(pending.subject(), pending.nonce(), true));
+                    }
+                    case "refresh_token" -> {
+                        String subject = refreshTokens.get(form.getOrDefault("refresh_token", ""));
+                        if (subject == null) {
+                            yield error(res, "invalid_grant");
+                        }
+                        bootstrapped.add(subject);
+                        yield json(res, "refresh", tokenResponse(subject, null, false));
+                    }
+                    default -> error(res, "unsupported_grant_type");
+                });
+    }
+
+    private Mono<Void> userInfo(HttpServerRequest req, HttpServerResponse res) {
+        String bearer = req.requestHeaders().get(HttpHeaderNames.AUTHORIZATION, "");
+        try {
+            JWTClaimsSet claims = SignedJWT.parse(bearer.substring("Bearer ".length())).getJWTClaimsSet();
+            return json(res, "userinfo", """
+                    {"sub":"%1$s","preferred_username":"%1$s","email":"%1$s@example.com"}"""
+                    .formatted(claims.getSubject()));
+        } catch (Exception e) {
+            return delayed("userinfo", res.status(HttpResponseStatus.UNAUTHORIZED).send());
+        }
+    }
+
+    /** The Keycloak sessions issued to {@code subject}, oldest first. */
+    public List<String> sids(String subject) {
+        return List.copyOf(sids.getOrDefault(subject, List.of()));
+    }
+
+    /** A back-channel logout token for {@code sid} as the realm posts it when that session ends. */
+    public String logoutToken(String subject, String sid) {
+        return sign(new JWTClaimsSet.Builder()
+                .issuer(issuer())
+                .subject(subject)
+                .audience(List.of(CLIENT_ID))
+                .issueTime(new Date())
+                .jwtID(UUID.randomUUID().toString())
+                .claim("sid", sid)
+                .claim("events", Map.of("http://schemas.openid.net/event/backchannel-logout", Map.of()))
+                .build());
+    }
+
+    private String tokenResponse(String subject, String nonce, boolean withIdToken) {
+        long expiresIn = TimeUnit.MINUTES.toSeconds(15);
+        JWTClaimsSet.Builder access = claims(subject, expiresIn);
+        String refreshToken = UUID.randomUUID().toString();
+        refreshTokens.put(refreshToken, subject);
+
+        StringBuilder body = new StringBuilder()
+                .append("{\"access_token\":\"").append(sign(access.build()))
+                .append("\",\"token_type\":\"Bearer\",\"expires_in\":").append(expiresIn)
+                .append(",\"refresh_expires_in\":").append(TimeUnit.HOURS.toSeconds(8))
+                .append(",\"refresh_token\":\"").append(refreshToken)
+                .append("\",\"scope\":\"openid profile email\"");
+        if (withIdToken) {
+            String sid = UUID.randomUUID().toString();
+            sids.computeIfAbsent(subject, k -> new CopyOnWriteArrayList<>()).add(sid);
+            JWTClaimsSet.Builder idToken = claims(subject, expiresIn)
+                    .claim("azp", CLIENT_ID)
+                    .claim("sid", sid);
+            if (nonce != null) {
+                idToken.claim("nonce", nonce);
+            }
+            body.append(",\"id_token\":\"").append(sign(idToken.build())).append('"');
+        }
+        return body.append('}').toString();
+    }
+
+    private JWTClaimsSet.Builder claims(String subject, long expiresInSeconds) {
+        long now = System.currentTimeMillis();
+        var claims = new JWTClaimsSet.Builder();
+        if (bootstrapped.contains(subject)) {
+            claims.claim("userId", UUID.nameUUIDFromBytes(subject.getBytes(StandardCharsets.UTF_8)).toString());
+        }
+        return claims
+                .issuer(issuer())
+                .subject(subject)
+                .audience(List.of(CLIENT_ID))
+                .issueTime(new Date(now))
+                .expirationTime(new Date(now + TimeUnit.SECONDS.toMillis(expiresInSeconds)))
+                .claim("preferred_username", subject)
+                .claim("email", subject + "@example.com");
+    }
+
+    private String sign(JWTClaimsSet claims) {
+        try {
+            SignedJWT jwt = new SignedJWT(
+                    new JWSHeader.Builder(JWSAlgorithm.RS256).keyID(signingKey.getKeyID()).build(), claims);
+            jwt.sign(new RSASSASigner(signingKey));
+            return jwt.serialize();
+        } catch (JOSEException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private String discovery() {
+        return """
+                {"issuer":"%1$s",
+                 "authorization_endpoint":"%1$s/protocol/openid-connect/auth",
+                 "token_endpoint":"%1$s/protocol/openid-connect/token",
+                 "userinfo_endpoint":"%1$s/protocol/openid-connect/userinfo",
+                 "end_session_endpoint":"%1$s/protocol/openid-connect/logout",
+                 "jwks_uri":"%1$s/protocol/openid-connect/certs",
+                 "response_types_supported":["code"],
+                 "subject_types_supported":["public"],
+                 "id_token_signing_alg_values_supported":["RS256"],
+                 "token_endpoint_auth_methods_supported":["client_secret_basic","client_secret_post"]}
+                """.formatted(issuer());
+    }
+
+    private Mono<Void> json(HttpServerResponse res, String endpoint, String body) {
+        return delayed(endpoint, res.header(HttpHeaderNames.CONTENT_TYPE, "application/json")
+                .sendString(Mono.just(body))
+                .then());
+    }
+
+    private Mono<Void> error(HttpServerResponse res, String error) {
+        return json(res.status(HttpResponseStatus.BAD_REQUEST), "error", "{\"error\":\"" + error + "\"}");
+    }
+
+    private Mono<Void> delayed(String endpoint, Mono<Void> response) {
+        calls.computeIfAbsent(endpoint, k -> new LongAdder()).increment();
+        return latency.isZero() ? response : Mono.delay(latency).then(response);
+    }
+
+    private static Map<String, String> single(Map<String, List<String>> params) {
+        return params.entrySet().stream()
+                .collect(Collectors.toMap(Map.Entry::getKey, e -> e.getValue().get(0), (a, b) -> a));
+    }
+
+    private record PendingCode(String subject, String nonce) {
+    }
+}
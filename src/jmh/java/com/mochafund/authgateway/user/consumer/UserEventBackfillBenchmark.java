@@ -0,0 +1,151 @@
+package com.mochafund.authgateway.user.consumer;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.mochafund.authgateway.common.events.EventEnvelope;
+import com.mochafund.authgateway.common.events.EventType;
+import com.mochafund.authgateway.session.SessionsService;
+import com.mochafund.authgateway.user.BootstrappedUsers;
+import com.mochafund.authgateway.user.events.UserEventPayload;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An identity backfill of {@code events} {@code user.updated} events with {@code invalidate} set,
+ * through {@link UserEventConsumer#handleUserEvents} in polls of 500, as {@code consumers} listener
+ * threads each owning the partitions of its share of the users. A tenth of the events are
+ * redeliveries of an earlier envelope and a tenth are late events older than the user's latest.
+ * Session deletes take {@code redisLatencyMillis} each instead of going to Redis.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class UserEventBackfillBenchmark {
+
+    private static final int POLL = 500;
+
+    @Param({"50000"})
+    public int events;
+
+    @Param({"1", "3"})
+    public int consumers;
+
+    @Param({"1"})
+    public int redisLatencyMillis;
+
+    private ObjectMapper objectMapper;
+    private List<List<ConsumerRecord<String, String>>> partitions;
+    private UserEventConsumer consumer;
+    private ExecutorService executor;
+
+    @Setup(Level.Trial)
+    public void records() throws Exception {
+        objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+        executor = Executors.newFixedThreadPool(consumers);
+        partitions = new ArrayList<>();
+        for (int i = 0; i < consumers; i++) {
+            partitions.add(new ArrayList<>());
+        }
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        LocalDateTime start = LocalDateTime.now().minusHours(1);
+        List<EventEnvelope<UserEventPayload>> sent = new ArrayList<>();
+        for (int i = 0; i < events; i++) {
+            EventEnvelope<UserEventPayload> event;
+            int kind = random.nextInt(10);
+            if (kind == 0 && !sent.isEmpty()) {
+                event = sent.get(random.nextInt(sent.size()));
+            } else if (kind == 1 && !sent.isEmpty()) {
+                EventEnvelope<UserEventPayload> newer = sent.get(random.nextInt(sent.size()));
+                event = newer.toBuilder().id(UUID.randomUUID()).occurredAt(newer.getOccurredAt().minusMinutes(5)).build();
+            } else {
+                event = EventEnvelope.<UserEventPayload>builder()
+                        .occurredAt(start.plusNanos(i * 1000L))
+                        .correlationId(UUID.randomUUID())
+                        .type(EventType.USER_UPDATED)
+                        .actor("identity-backfill")
+                        .payload(UserEventPayload.builder()
+                                .userId(UUID.randomUUID())
+                                .email("user-" + i + "@example.com")
+                                .invalidate(true)
+                                .build())
+                        .build();
+                sent.add(event);
+            }
+            String key = event.getPayload().getUserId().toString();
+            int partition = Math.floorMod(key.hashCode(), consumers);
+            List<ConsumerRecord<String, String>> records = partitions.get(partition);
+            records.add(new ConsumerRecord<>(EventType.USER_UPDATED, partition, records.size(), key,
+                    objectMapper.writeValueAsString(event)));
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void consumer() {
+        var meterRegistry = new SimpleMeterRegistry();
+        Duration latency = Duration.ofMillis(redisLatencyMillis);
+        var sessions = new SessionsService(null, null, meterRegistry, 100, 500) {
+            @Override
+            public Mono<Long> deleteAllByUserId(String userId) {
+                return Mono.delay(latency).thenReturn(0L);
+            }
+
+            @Override
+            public Mono<Long> deleteAllByPrincipal(String principal) {
+                return Mono.delay(latency).thenReturn(0L);
+            }
+        };
+        consumer = new UserEventConsumer(sessions, new BootstrappedUsers(meterRegistry, 100_000, Duration.ofMinutes(5)),
+                new ProcessedUserEvents(meterRegistry, 200_000, Duration.ofHours(1)),
+                objectMapper, meterRegistry, 16, Duration.ofSeconds(60), false);
+    }
+
+    @TearDown(Level.Trial)
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Benchmark
+    public int backfill() throws Exception {
+        List<Future<?>> running = new ArrayList<>();
+        for (List<ConsumerRecord<String, String>> records : partitions) {
+            running.add(executor.submit(() -> {
+                for (int from = 0; from < records.size(); from += POLL) {
+                    consumer.handleUserEvents(records.subList(from, Math.min(from + POLL, records.size())), () -> { });
+                }
+            }));
+        }
+        for (Future<?> future : running) {
+            future.get();
+        }
+        return events;
+    }
+}
@@ -0,0 +1,60 @@
+package com.mochafund.authgateway.user.consumer;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.mochafund.authgateway.common.events.EventEnvelope;
+import com.mochafund.authgateway.common.events.EventType;
+import com.mochafund.authgateway.user.events.UserEventPayload;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UserEventParsingBenchmark {
+
+    private UserEventConsumer consumer;
+    private String message;
+
+    @Setup
+    public void setup() throws Exception {
+        ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+        consumer = new UserEventConsumer(null, null, null, objectMapper, new SimpleMeterRegistry(), 16, Duration.ofSeconds(60), true);
+
+        EventEnvelope<UserEventPayload> envelope = EventEnvelope.<UserEventPayload>builder()
+                .correlationId(UUID.randomUUID())
+                .type(EventType.USER_UPDATED)
+                .actor("identity-service")
+                .payload(UserEventPayload.builder()
+                        .userId(UUID.randomUUID())
+                        .email("new.address@example.com")
+                        .oldEmail("old.address@example.com")
+                        .isActive(true)
+                        .lastWorkspaceId(UUID.randomUUID())
+                        .invalidate(true)
+                        .build())
+                .build();
+        message = objectMapper.writeValueAsString(envelope);
+    }
+
+    @Benchmark
+    public EventEnvelope<UserEventPayload> readEnvelope() {
+        return consumer.readEnvelope(message, UserEventPayload.class);
+    }
+}
@@ -0,0 +1,107 @@
+package com.mochafund.authgateway.auth;
+
+import com.mochafund.authgateway.session.RevocationQueue;
+import com.mochafund.authgateway.session.SessionIndexConfig;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtException;
+import org.springframework.security.oauth2.jwt.ReactiveJwtDecoder;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+/**
+ * OpenID Connect back-channel logout receiver. Keycloak posts a signed logout token here when one of
+ * its sessions ends; the matching gateway sessions are revoked through the {@code sid} index, or the
+ * {@code sub} index when the token names no session.
+ * <p>
+ * The token is verified against the cached realm JWKS and answered as soon as the revocation is queued;
+ * {@link RevocationQueue} applies it shortly after. A full queue answers 503 so the burst is visible
+ * rather than silently dropped.
+ */
+@Slf4j
+@RestController
+@RequestMapping("/auth")
+public class BackChannelLogoutController {
+
+    private final ReactiveJwtDecoder logoutTokenDecoder;
+    private final RevocationQueue revocations;
+
+    private final Counter accepted;
+    private final Counter invalid;
+    private final Counter rejected;
+
+    public BackChannelLogoutController(
+            @Qualifier("logoutTokenDecoder") ReactiveJwtDecoder logoutTokenDecoder,
+            RevocationQueue revocations,
+            MeterRegistry meterRegistry
+    ) {
+        this.logoutTokenDecoder = logoutTokenDecoder;
+        this.revocations = revocations;
+        this.accepted = requests(meterRegistry, "accepted");
+        this.invalid = requests(meterRegistry, "invalid");
+        this.rejected = requests(meterRegistry, "rejected");
+    }
+
+    private static Counter requests(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("authgw.logout.backchannel.requests")
+                .description("Back-channel logout requests by result: queued, invalid token, or queue full")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    @PostMapping(value = "/backchannel-logout", consumes = MediaType.APPLICATION_FORM_URLENCODED_VALUE)
+    public Mono<ResponseEntity<String>> backChannelLogout(ServerWebExchange exchange) {
+        return exchange.getFormData().flatMap(form -> {
+            String logoutToken = form.getFirst("logout_token");
+            if (logoutToken == null || logoutToken.isBlank()) {
+                invalid.increment();
+                return Mono.just(error("logout_token is required"));
+            }
+            return decodeAndEnqueue(logoutToken);
+        });
+    }
+
+    private Mono<ResponseEntity<String>> decodeAndEnqueue(String logoutToken) {
+        return logoutTokenDecoder.decode(logoutToken)
+                .map(this::enqueue)
+                .onErrorResume(JwtException.class, ex -> {
+                    invalid.increment();
+                    log.warn("Rejected back-channel logout token: {}", ex.getMessage());
+                    return Mono.just(error("Invalid logout token"));
+                });
+    }
+
+    private ResponseEntity<String> enqueue(Jwt token) {
+        String sid = token.getClaimAsString("sid");
+        var revocation = sid != null
+                ? new RevocationQueue.Revocation(SessionIndexConfig.SID_INDEX_NAME, sid)
+                : new RevocationQueue.Revocation(SessionIndexConfig.SUB_INDEX_NAME, token.getSubject());
+        if (!revocations.offer(revocation)) {
+            rejected.increment();
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, "1")
+                    .cacheControl(CacheControl.noStore())
+                    .build();
+        }
+        accepted.increment();
+        return ResponseEntity.ok().cacheControl(CacheControl.noStore()).build();
+    }
+
+    private static ResponseEntity<String> error(String description) {
+        return ResponseEntity.badRequest()
+                .cacheControl(CacheControl.noStore())
+                .contentType(MediaType.APPLICATION_JSON)
+                .body("{\"error\":\"invalid_request\",\"error_description\":\"" + description + "\"}");
+    }
+}
@@ -1,7 +1,10 @@
 package com.mochafund.authgateway.auth;
 
-import lombok.RequiredArgsConstructor;
+import com.mochafund.authgateway.common.metrics.OutcomeTimer;
+import com.mochafund.authgateway.common.retry.BudgetedRetry;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.keycloak.representations.AccessTokenResponse;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Component;
@@ -10,18 +13,34 @@ import org.springframework.web.reactive.function.client.WebClient;
 import reactor.core.publisher.Mono;
 
 @Component
-@RequiredArgsConstructor
 public class KeycloakClient {
-    private final WebClient.Builder web;
+    private final WebClient web;
+    private final BudgetedRetry retry;
+    private final OutcomeTimer refreshTimer;
 
-    @Value("${keycloak.admin.base-url}") String kcBase;
     @Value("${keycloak.admin.realm}") String realm;
     @Value("${keycloak.admin.client-id}") String clientId;
     @Value("${keycloak.admin.client-secret}") String clientSecret;
 
+    public KeycloakClient(
+            @Qualifier("keycloakWebClient") WebClient web,
+            @Qualifier("keycloakRetry") BudgetedRetry retry,
+            MeterRegistry meterRegistry
+    ) {
+        this.web = web;
+        this.retry = retry;
+        this.refreshTimer = OutcomeTimer.register(meterRegistry, "authgw.keycloak.token-refresh",
+                "refresh_token grant against the Keycloak token endpoint");
+    }
+
+    /**
+     * Retried under the Keycloak budget only when Keycloak was never reached. Once the grant has been
+     * sent, a realm that rotates refresh tokens may already have revoked this one, and replaying it
+     * would fail with {@code invalid_grant} and end the session.
+     */
     Mono<TokenResponse> refreshAccessToken(String refreshToken) {
-        return web.build().post()
-                .uri(kcBase + "/realms/{r}/protocol/openid-connect/token", realm)
+        return refreshTimer.time(retry.apply(web.post()
+                .uri("/realms/{r}/protocol/openid-connect/token", realm)
                 .contentType(MediaType.APPLICATION_FORM_URLENCODED)
                 .body(BodyInserters
                         .fromFormData("grant_type", "refresh_token")
@@ -29,14 +48,14 @@ public class KeycloakClient {
                         .with("client_secret", clientSecret)
                         .with("refresh_token", refreshToken))
                 .retrieve()
-                .bodyToMono(AccessTokenResponse.class)
+                .bodyToMono(AccessTokenResponse.class), BudgetedRetry::isConnectFailure)
                 .map(atr -> new TokenResponse(
                         atr.getToken(),
                         atr.getRefreshToken() == null || atr.getRefreshToken().isBlank()
                                 ? refreshToken : atr.getRefreshToken(),
                         atr.getExpiresIn(),
                         atr.getRefreshExpiresIn()
-                ));
+                )));
     }
 
     record TokenResponse(String accessToken, String refreshToken, Long expiresIn, Long refreshExpiresIn) {}
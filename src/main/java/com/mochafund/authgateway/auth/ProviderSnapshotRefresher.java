@@ -0,0 +1,75 @@
+package com.mochafund.authgateway.auth;
+
+import com.nimbusds.jose.jwk.JWKSet;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.text.ParseException;
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Refetches the OIDC discovery document and JWKS every {@code refresh-interval}, first as soon as the
+ * boot snapshot is that old, and applies them to the client registrations and the JWK source before
+ * writing the snapshot file for the next pod. A failed refresh keeps what the gateway has and tries
+ * again on the next tick.
+ */
+@Slf4j
+@Component
+public class ProviderSnapshotRefresher {
+
+    private final ProviderSnapshotStore store;
+    private final SnapshotClientRegistrationRepository registrations;
+    private final RefreshingJwkSource jwkSource;
+    private final Duration refreshInterval;
+    private Disposable subscription;
+
+    public ProviderSnapshotRefresher(
+            ProviderSnapshotStore store,
+            SnapshotClientRegistrationRepository registrations,
+            RefreshingJwkSource jwkSource,
+            @Value("${mochafund.oidc.snapshot.refresh-interval:10m}") Duration refreshInterval
+    ) {
+        this.store = store;
+        this.registrations = registrations;
+        this.jwkSource = jwkSource;
+        this.refreshInterval = refreshInterval;
+    }
+
+    @PostConstruct
+    void start() {
+        Duration age = Duration.between(store.initial().fetchedAt(), Instant.now());
+        Duration firstDelay = age.compareTo(refreshInterval) >= 0 ? Duration.ZERO : refreshInterval.minus(age);
+        subscription = Flux.interval(firstDelay, refreshInterval)
+                .concatMap(tick -> store.fetch()
+                        .doOnNext(this::apply)
+                        .onErrorResume(ex -> {
+                            log.warn("OIDC provider snapshot refresh failed: {}", ex.toString());
+                            return Mono.empty();
+                        }))
+                .subscribe();
+    }
+
+    @PreDestroy
+    void stop() {
+        if (subscription != null) {
+            subscription.dispose();
+        }
+    }
+
+    private void apply(ProviderSnapshotStore.Snapshot snapshot) {
+        try {
+            jwkSource.publish(JWKSet.parse(snapshot.jwks()), snapshot.fetchedAt());
+        } catch (ParseException e) {
+            throw new IllegalStateException("Keycloak returned an unparseable JWKS", e);
+        }
+        registrations.update(snapshot.metadata());
+        store.save(snapshot);
+    }
+}
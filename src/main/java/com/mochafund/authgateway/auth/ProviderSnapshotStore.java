@@ -0,0 +1,147 @@
+package com.mochafund.authgateway.auth;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Keycloak's OIDC discovery document and JWKS, kept in a local file so a new pod can build its client
+ * registration and verify tokens without calling Keycloak first. {@link ProviderSnapshotRefresher}
+ * fetches both again in the background and rewrites the file.
+ * <p>
+ * At boot the file wins; without one (first start, or a snapshot from another issuer) the documents
+ * are fetched once, as Boot's issuer discovery would, and if Keycloak cannot be reached either the
+ * endpoints are taken from Keycloak's fixed {@code /protocol/openid-connect/*} layout under the issuer.
+ */
+@Slf4j
+public class ProviderSnapshotStore {
+
+    public record Snapshot(Map<String, Object> metadata, Map<String, Object> jwks, Instant fetchedAt) {
+    }
+
+    private static final TypeReference<Map<String, Object>> MAP = new TypeReference<>() {
+    };
+
+    private final WebClient webClient;
+    private final ObjectMapper objectMapper;
+    private final String issuerUri;
+    private final String jwkSetUri;
+    private final Path file;
+    private final Duration bootFetchTimeout;
+    private volatile Snapshot initial;
+
+    public ProviderSnapshotStore(
+            WebClient webClient,
+            ObjectMapper objectMapper,
+            String issuerUri,
+            String jwkSetUri,
+            Path file,
+            Duration bootFetchTimeout
+    ) {
+        this.webClient = webClient;
+        this.objectMapper = objectMapper;
+        this.issuerUri = issuerUri;
+        this.jwkSetUri = jwkSetUri;
+        this.file = file;
+        this.bootFetchTimeout = bootFetchTimeout;
+    }
+
+    /** The snapshot the gateway boots from, resolved once. Its {@code jwks} is empty for the layout fallback. */
+    public synchronized Snapshot initial() {
+        if (initial == null) {
+            initial = load().orElseGet(this::fetchOnBoot);
+        }
+        return initial;
+    }
+
+    /** Both documents, fresh from Keycloak. */
+    public Mono<Snapshot> fetch() {
+        Mono<Map<String, Object>> metadata = webClient.get()
+                .uri(issuerUri + "/.well-known/openid-configuration")
+                .retrieve()
+                .bodyToMono(MAP);
+        Mono<Map<String, Object>> jwks = webClient.get()
+                .uri(jwkSetUri)
+                .retrieve()
+                .bodyToMono(MAP);
+        return Mono.zip(metadata, jwks, (m, k) -> new Snapshot(m, k, Instant.now()));
+    }
+
+    /** Replaces the file in one move, so a pod starting at the same time never reads half of it. */
+    public void save(Snapshot snapshot) {
+        try {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            Path tmp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+            objectMapper.writeValue(tmp.toFile(), Map.of(
+                    "metadata", snapshot.metadata(),
+                    "jwks", snapshot.jwks(),
+                    "fetchedAt", snapshot.fetchedAt().toString()));
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("Could not write OIDC provider snapshot to {}: {}", file, e.toString());
+        }
+    }
+
+    private Optional<Snapshot> load() {
+        try {
+            Map<String, Object> stored = objectMapper.readValue(file.toFile(), MAP);
+            if (!(stored.get("metadata") instanceof Map<?, ?> metadata)
+                    || !(stored.get("jwks") instanceof Map<?, ?> jwks)
+                    || !issuerUri.equals(metadata.get("issuer"))) {
+                log.info("Ignoring OIDC provider snapshot at {}: not for issuer {}", file, issuerUri);
+                return Optional.empty();
+            }
+            var snapshot = new Snapshot(cast(metadata), cast(jwks), Instant.parse((String) stored.get("fetchedAt")));
+            log.info("Booting from OIDC provider snapshot fetched at {}", snapshot.fetchedAt());
+            return Optional.of(snapshot);
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        } catch (IOException | RuntimeException e) {
+            log.warn("Ignoring unreadable OIDC provider snapshot at {}: {}", file, e.toString());
+            return Optional.empty();
+        }
+    }
+
+    private Snapshot fetchOnBoot() {
+        try {
+            Snapshot snapshot = fetch().block(bootFetchTimeout);
+            if (snapshot != null) {
+                save(snapshot);
+                return snapshot;
+            }
+        } catch (RuntimeException e) {
+            log.warn("OIDC discovery failed at boot, using Keycloak's default endpoints until it succeeds: {}", e.toString());
+        }
+        return new Snapshot(keycloakLayout(), Map.of(), Instant.EPOCH);
+    }
+
+    private Map<String, Object> keycloakLayout() {
+        String base = issuerUri + "/protocol/openid-connect";
+        Map<String, Object> metadata = new LinkedHashMap<>();
+        metadata.put("issuer", issuerUri);
+        metadata.put("authorization_endpoint", base + "/auth");
+        metadata.put("token_endpoint", base + "/token");
+        metadata.put("userinfo_endpoint", base + "/userinfo");
+        metadata.put("end_session_endpoint", base + "/logout");
+        metadata.put("jwks_uri", jwkSetUri);
+        return metadata;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> cast(Map<?, ?> map) {
+        return (Map<String, Object>) map;
+    }
+}
@@ -0,0 +1,134 @@
+package com.mochafund.authgateway.auth;
+
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKMatcher;
+import com.nimbusds.jose.jwk.JWKSelector;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jwt.SignedJWT;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.text.ParseException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * JWK source for {@link org.springframework.security.oauth2.jwt.NimbusReactiveJwtDecoder} that keeps
+ * the realm's JWKS in memory and tells listeners when a signing key disappears from it.
+ * <p>
+ * The set is refetched when a token names an unknown key (at most once per {@code minRefreshInterval})
+ * and in the background once it is older than {@code maxAge}. A set fetched elsewhere, such as the
+ * boot snapshot, can be handed in with {@link #publish(JWKSet, Instant)}.
+ */
+@Slf4j
+public class RefreshingJwkSource implements Function<SignedJWT, Flux<JWK>> {
+
+    private record Snapshot(JWKSet keys, Instant fetchedAt) {}
+
+    private final WebClient webClient;
+    private final String jwkSetUri;
+    private final Duration minRefreshInterval;
+    private final Duration maxAge;
+    private final Clock clock = Clock.systemUTC();
+    private final List<Runnable> rotationListeners = new CopyOnWriteArrayList<>();
+
+    private final AtomicReference<Snapshot> current = new AtomicReference<>();
+    private final AtomicReference<Mono<Snapshot>> inflight = new AtomicReference<>();
+
+    public RefreshingJwkSource(WebClient webClient, String jwkSetUri, Duration minRefreshInterval, Duration maxAge) {
+        this.webClient = webClient;
+        this.jwkSetUri = jwkSetUri;
+        this.minRefreshInterval = minRefreshInterval;
+        this.maxAge = maxAge;
+    }
+
+    /** Registers a callback fired whenever a previously published key id is no longer in the set. */
+    public void onKeyRotation(Runnable listener) {
+        rotationListeners.add(listener);
+    }
+
+    /** Current key set, fetching it on first use. */
+    public Mono<JWKSet> keys() {
+        Snapshot snapshot = current.get();
+        return snapshot != null ? Mono.just(snapshot.keys()) : refresh().map(Snapshot::keys);
+    }
+
+    /** Replaces the key set as if it had been fetched at {@code fetchedAt}, notifying listeners of removed keys. */
+    public void publish(JWKSet keys, Instant fetchedAt) {
+        publish(new Snapshot(keys, fetchedAt));
+    }
+
+    @Override
+    public Flux<JWK> apply(SignedJWT jwt) {
+        JWSHeader header = jwt.getHeader();
+        Snapshot snapshot = current.get();
+        if (snapshot == null) {
+            return refresh().flatMapIterable(s -> select(s.keys(), header));
+        }
+
+        if (snapshot.fetchedAt().plus(maxAge).isBefore(clock.instant())) {
+            refresh().subscribe(s -> { }, ex -> log.warn("Background JWKS refresh failed: {}", ex.toString()));
+        }
+
+        List<JWK> matches = select(snapshot.keys(), header);
+        if (!matches.isEmpty() || snapshot.fetchedAt().plus(minRefreshInterval).isAfter(clock.instant())) {
+            return Flux.fromIterable(matches);
+        }
+        return refresh().flatMapIterable(s -> select(s.keys(), header));
+    }
+
+    private static List<JWK> select(JWKSet keys, JWSHeader header) {
+        return new JWKSelector(JWKMatcher.forJWSHeader(header)).select(keys);
+    }
+
+    private Mono<Snapshot> refresh() {
+        Mono<Snapshot> running = inflight.get();
+        if (running != null) {
+            return running;
+        }
+        Mono<Snapshot> fetch = webClient.get()
+                .uri(jwkSetUri)
+                .retrieve()
+                .bodyToMono(String.class)
+                .map(this::parse)
+                .doOnNext(this::publish)
+                .doFinally(signal -> inflight.set(null))
+                .cache();
+        return inflight.compareAndSet(null, fetch) ? fetch : refresh();
+    }
+
+    private Snapshot parse(String body) {
+        try {
+            return new Snapshot(JWKSet.parse(body), clock.instant());
+        } catch (ParseException e) {
+            throw new IllegalStateException("Failed to parse JWKS from " + jwkSetUri, e);
+        }
+    }
+
+    private void publish(Snapshot next) {
+        Snapshot previous = current.getAndSet(next);
+        if (previous == null) {
+            return;
+        }
+        Set<String> nextIds = keyIds(next.keys());
+        boolean removed = keyIds(previous.keys()).stream().anyMatch(id -> !nextIds.contains(id));
+        if (removed) {
+            log.info("JWKS signing keys rotated; notifying {} listener(s)", rotationListeners.size());
+            rotationListeners.forEach(Runnable::run);
+        }
+    }
+
+    private static Set<String> keyIds(JWKSet keys) {
+        return keys.getKeys().stream().map(JWK::getKeyID).collect(Collectors.toSet());
+    }
+}
@@ -0,0 +1,139 @@
+package com.mochafund.authgateway.auth;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.security.oauth2.client.OAuth2AuthorizationContext;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.security.oauth2.client.ReactiveOAuth2AuthorizedClientProvider;
+import org.springframework.security.oauth2.client.RefreshTokenReactiveOAuth2AuthorizedClientProvider;
+import org.springframework.security.oauth2.client.web.server.ServerOAuth2AuthorizedClientRepository;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Refresh-token provider that lets at most one refresh per authorized client hit Keycloak.
+ * <p>
+ * Concurrent requests on the same session carry the same refresh token, so it is used as the
+ * single-flight key: the first caller performs the grant and the rest await its result. The
+ * result is kept for a short while so stragglers still holding the old token do not replay a
+ * refresh token Keycloak may already have rotated.
+ * <p>
+ * When {@code refreshAhead} is positive, tokens inside that margin are refreshed in the
+ * background while the caller proceeds with the still-valid token. The manager only saves what
+ * this provider returns, so the background result is saved here; otherwise a rotated refresh
+ * token would be lost once the result cache expires and the next refresh would fail.
+ */
+@Slf4j
+public class SingleFlightRefreshTokenProvider implements ReactiveOAuth2AuthorizedClientProvider {
+
+    private final RefreshTokenReactiveOAuth2AuthorizedClientProvider delegate =
+            new RefreshTokenReactiveOAuth2AuthorizedClientProvider();
+    private final ServerOAuth2AuthorizedClientRepository authorizedClients;
+    private final AsyncCache<String, OAuth2AuthorizedClient> refreshes;
+    private final Duration clockSkew;
+    private final Duration refreshAhead;
+    private final Clock clock = Clock.systemUTC();
+
+    private final Counter refreshed;
+    private final Counter coalesced;
+    private final Counter cached;
+    private final Counter failed;
+
+    public SingleFlightRefreshTokenProvider(
+            ServerOAuth2AuthorizedClientRepository authorizedClients,
+            MeterRegistry meterRegistry,
+            Duration clockSkew,
+            Duration refreshAhead,
+            Duration resultTtl) {
+        this.authorizedClients = authorizedClients;
+        this.clockSkew = clockSkew;
+        this.refreshAhead = refreshAhead.compareTo(clockSkew) > 0 ? refreshAhead : Duration.ZERO;
+        this.delegate.setClockSkew(this.refreshAhead.isZero() ? clockSkew : this.refreshAhead);
+        this.refreshes = Caffeine.newBuilder()
+                .expireAfterWrite(resultTtl)
+                .maximumSize(100_000)
+                .buildAsync();
+
+        this.refreshed = refreshCounter(meterRegistry, "refreshed");
+        this.coalesced = refreshCounter(meterRegistry, "coalesced");
+        this.cached = refreshCounter(meterRegistry, "cached");
+        this.failed = refreshCounter(meterRegistry, "failed");
+    }
+
+    private static Counter refreshCounter(MeterRegistry registry, String outcome) {
+        return Counter.builder("authgw.token.refresh")
+                .description("Access-token refresh attempts by outcome")
+                .tag("outcome", outcome)
+                .register(registry);
+    }
+
+    @Override
+    public Mono<OAuth2AuthorizedClient> authorize(OAuth2AuthorizationContext context) {
+        OAuth2AuthorizedClient client = context.getAuthorizedClient();
+        if (client == null || client.getRefreshToken() == null) {
+            return Mono.empty();
+        }
+        Instant expiresAt = client.getAccessToken().getExpiresAt();
+        if (expiresAt == null) {
+            return Mono.empty();
+        }
+
+        Instant now = clock.instant();
+        String key = client.getClientRegistration().getRegistrationId() + ":" + client.getRefreshToken().getTokenValue();
+
+        if (now.isAfter(expiresAt.minus(clockSkew))) {
+            return Mono.fromFuture(refresh(key, context, false, null), true);
+        }
+        if (refreshAhead.isZero() || !now.isAfter(expiresAt.minus(refreshAhead))) {
+            return Mono.empty();
+        }
+
+        CompletableFuture<OAuth2AuthorizedClient> previous = refreshes.getIfPresent(key);
+        if (previous != null && previous.isDone() && !previous.isCompletedExceptionally()) {
+            cached.increment();
+            return Mono.justOrEmpty(previous.join());
+        }
+        return Mono.deferContextual(ctx -> {
+            // The exchange is only read for anonymous principals, which never hold a refresh token
+            refresh(key, context, true, ctx.getOrDefault(ServerWebExchange.class, null));
+            return Mono.empty();
+        });
+    }
+
+    /**
+     * Joins or starts the grant for {@code key}. With {@code save}, as for a background refresh, the
+     * caller that starts the grant also saves its result.
+     */
+    private CompletableFuture<OAuth2AuthorizedClient> refresh(
+            String key, OAuth2AuthorizationContext context, boolean save, ServerWebExchange exchange) {
+        AtomicBoolean leader = new AtomicBoolean();
+        CompletableFuture<OAuth2AuthorizedClient> result = refreshes.get(key, (k, executor) -> {
+            leader.set(true);
+            Mono<OAuth2AuthorizedClient> grant = delegate.authorize(context)
+                    .doOnNext(c -> refreshed.increment())
+                    .doOnError(ex -> {
+                        failed.increment();
+                        log.warn("Token refresh failed for {}: {}", context.getPrincipal().getName(), ex.toString());
+                    });
+            if (save) {
+                grant = grant.flatMap(c -> authorizedClients
+                        .saveAuthorizedClient(c, context.getPrincipal(), exchange)
+                        .thenReturn(c));
+            }
+            return grant.toFuture();
+        });
+        if (!leader.get()) {
+            (result.isDone() ? cached : coalesced).increment();
+        }
+        return result;
+    }
+}
@@ -0,0 +1,73 @@
+package com.mochafund.authgateway.auth;
+
+import org.springframework.boot.autoconfigure.security.oauth2.client.OAuth2ClientProperties;
+import org.springframework.security.oauth2.client.registration.ClientRegistration;
+import org.springframework.security.oauth2.client.registration.ReactiveClientRegistrationRepository;
+import org.springframework.security.oauth2.core.AuthenticationMethod;
+import org.springframework.security.oauth2.core.AuthorizationGrantType;
+import org.springframework.security.oauth2.core.ClientAuthenticationMethod;
+import reactor.core.publisher.Mono;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Client registrations built from {@code spring.security.oauth2.client.registration.*} and a
+ * provider metadata document from {@link ProviderSnapshotStore}, in place of Boot's repository, which
+ * runs issuer discovery against Keycloak while the context starts. {@link #update} swaps in the
+ * endpoints from a newer document; logins already under way keep the registration they started with.
+ */
+public class SnapshotClientRegistrationRepository implements ReactiveClientRegistrationRepository, Iterable<ClientRegistration> {
+
+    private final OAuth2ClientProperties properties;
+    private volatile Map<String, ClientRegistration> registrations;
+
+    public SnapshotClientRegistrationRepository(OAuth2ClientProperties properties, Map<String, Object> metadata) {
+        this.properties = properties;
+        update(metadata);
+    }
+
+    public void update(Map<String, Object> metadata) {
+        Map<String, ClientRegistration> next = new LinkedHashMap<>();
+        properties.getRegistration().forEach((id, registration) -> next.put(id, build(id, registration, metadata)));
+        this.registrations = next;
+    }
+
+    @Override
+    public Mono<ClientRegistration> findByRegistrationId(String registrationId) {
+        return Mono.justOrEmpty(registrations.get(registrationId));
+    }
+
+    @Override
+    public Iterator<ClientRegistration> iterator() {
+        return List.copyOf(registrations.values()).iterator();
+    }
+
+    private ClientRegistration build(String id, OAuth2ClientProperties.Registration registration, Map<String, Object> metadata) {
+        OAuth2ClientProperties.Provider provider = properties.getProvider().get(registration.getProvider());
+        var builder = ClientRegistration.withRegistrationId(id)
+                .clientId(registration.getClientId())
+                .clientSecret(registration.getClientSecret())
+                .clientAuthenticationMethod(registration.getClientAuthenticationMethod() != null
+                        ? new ClientAuthenticationMethod(registration.getClientAuthenticationMethod())
+                        : ClientAuthenticationMethod.CLIENT_SECRET_BASIC)
+                .authorizationGrantType(new AuthorizationGrantType(registration.getAuthorizationGrantType()))
+                .redirectUri(registration.getRedirectUri())
+                .scope(registration.getScope())
+                .clientName(registration.getClientName() != null ? registration.getClientName() : id)
+                .issuerUri((String) metadata.get("issuer"))
+                .authorizationUri((String) metadata.get("authorization_endpoint"))
+                .tokenUri((String) metadata.get("token_endpoint"))
+                .userInfoUri((String) metadata.get("userinfo_endpoint"))
+                .userInfoAuthenticationMethod(AuthenticationMethod.HEADER)
+                .jwkSetUri((String) metadata.get("jwks_uri"))
+                // The OIDC logout success handler reads end_session_endpoint from here
+                .providerConfigurationMetadata(metadata);
+        if (provider != null && provider.getUserNameAttribute() != null) {
+            builder.userNameAttributeName(provider.getUserNameAttribute());
+        }
+        return builder.build();
+    }
+}
@@ -1,14 +1,21 @@
 package com.mochafund.authgateway.auth;
 
+import com.mochafund.authgateway.common.metrics.OutcomeTimer;
+import com.mochafund.authgateway.session.SessionIndexConfig;
+import com.mochafund.authgateway.user.BootstrappedUsers;
 import com.mochafund.authgateway.user.UserService;
-import lombok.RequiredArgsConstructor;
+import com.nimbusds.jwt.JWTParser;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
 import org.springframework.security.oauth2.client.authentication.OAuth2AuthenticationToken;
 import org.springframework.security.oauth2.client.web.server.ServerOAuth2AuthorizedClientRepository;
 import org.springframework.security.oauth2.core.OAuth2AccessToken;
 import org.springframework.security.oauth2.core.OAuth2RefreshToken;
+import org.springframework.security.oauth2.core.oidc.user.OidcUser;
 import org.springframework.security.web.server.WebFilterExchange;
 import org.springframework.security.web.server.authentication.RedirectServerAuthenticationSuccessHandler;
 import org.springframework.security.web.server.authentication.ServerAuthenticationSuccessHandler;
@@ -16,17 +23,66 @@ import org.springframework.security.web.server.savedrequest.WebSessionServerRequ
 import org.springframework.stereotype.Component;
 import reactor.core.publisher.Mono;
 
+import java.text.ParseException;
 import java.time.Instant;
+import java.util.Map;
 import java.util.Set;
 
 @Slf4j
 @Component
-@RequiredArgsConstructor
 public class SuccessHandler implements ServerAuthenticationSuccessHandler {
 
     private final ServerOAuth2AuthorizedClientRepository authorizedClientRepository;
     private final KeycloakClient keycloakClient;
     private final UserService userService;
+    private final BootstrappedUsers bootstrappedUsers;
+    private final String userIdClaim;
+
+    private final Counter claimPath;
+    private final Counter cachedPath;
+    private final Counter fullPath;
+    private final OutcomeTimer loginTimer;
+    private final OutcomeTimer bootstrapStage;
+    private final OutcomeTimer refreshStage;
+    private final OutcomeTimer saveStage;
+
+    public SuccessHandler(
+            ServerOAuth2AuthorizedClientRepository authorizedClientRepository,
+            KeycloakClient keycloakClient,
+            UserService userService,
+            BootstrappedUsers bootstrappedUsers,
+            MeterRegistry meterRegistry,
+            @Value("${mochafund.user-bootstrap.claim:userId}") String userIdClaim
+    ) {
+        this.authorizedClientRepository = authorizedClientRepository;
+        this.keycloakClient = keycloakClient;
+        this.userService = userService;
+        this.bootstrappedUsers = bootstrappedUsers;
+        this.userIdClaim = userIdClaim;
+
+        this.claimPath = bootstrapPath(meterRegistry, "claim");
+        this.cachedPath = bootstrapPath(meterRegistry, "cached");
+        this.fullPath = bootstrapPath(meterRegistry, "full");
+
+        this.loginTimer = OutcomeTimer.register(meterRegistry, "authgw.login.duration",
+                "Post-login work in SuccessHandler, from loading the authorized client up to the redirect");
+        this.bootstrapStage = stageTimer(meterRegistry, "bootstrap");
+        this.refreshStage = stageTimer(meterRegistry, "refresh");
+        this.saveStage = stageTimer(meterRegistry, "save");
+    }
+
+    private static OutcomeTimer stageTimer(MeterRegistry meterRegistry, String stage) {
+        return OutcomeTimer.register(meterRegistry, "authgw.login.stage",
+                "One stage of the post-login sequence", "stage", stage);
+    }
+
+    private static Counter bootstrapPath(MeterRegistry meterRegistry, String path) {
+        return Counter.builder("authgw.login.bootstrap")
+                .description("Logins by how the user bootstrap was handled: claim present, "
+                        + "recently bootstrapped, or full bootstrap and refresh")
+                .tag("path", path)
+                .register(meterRegistry);
+    }
 
     private final RedirectServerAuthenticationSuccessHandler redirect = initRedirectHandler();
     private RedirectServerAuthenticationSuccessHandler initRedirectHandler() {
@@ -43,22 +99,94 @@ public class SuccessHandler implements ServerAuthenticationSuccessHandler {
 
         String registrationId = oat.getAuthorizedClientRegistrationId();
 
-        return authorizedClientRepository
-                .loadAuthorizedClient(registrationId, authentication, exchange.getExchange())
-                .flatMap(client ->
-                        // 1) Ask identity-service to bootstrap user (204 on success)
-                        userService.bootstrapUser(client)
-                                // 2) Then refresh tokens to pick up userId claim
-                                .then(refreshAuthorizedClient(client, oat, exchange))
-                                .onErrorResume(ex -> {
-                                    log.warn("[bootstrap-user-request] Bootstrap/refresh chain failed: {}", ex.toString());
-                                    return Mono.just(client);
-                                })
-                )
+        return loginTimer.time(authorizedClientRepository
+                        .loadAuthorizedClient(registrationId, authentication, exchange.getExchange())
+                        .flatMap(client -> {
+                            // Returning users already carry the userId claim: nothing to bootstrap or refresh
+                            String userId = userIdOf(oat, client);
+                            if (userId != null) {
+                                claimPath.increment();
+                                return Mono.just(userId);
+                            }
+
+                            // 1) Ask identity-service to bootstrap user (204 on success), unless this node just did
+                            String principal = oat.getName();
+                            Mono<Void> bootstrap;
+                            if (bootstrappedUsers.contains(principal)) {
+                                cachedPath.increment();
+                                bootstrap = Mono.empty();
+                            } else {
+                                fullPath.increment();
+                                bootstrap = bootstrapStage.time(userService.bootstrapUser(client))
+                                        .doOnSuccess(done -> bootstrappedUsers.add(principal));
+                            }
+
+                            // 2) Then refresh tokens to pick up userId claim
+                            return bootstrap
+                                    .then(refreshAuthorizedClient(client, oat, exchange))
+                                    .mapNotNull(refreshed -> userIdOf(oat, refreshed))
+                                    .onErrorResume(ex -> {
+                                        log.warn("[bootstrap-user-request] Bootstrap/refresh chain failed: {}", ex.toString());
+                                        return Mono.empty();
+                                    });
+                        })
+                        .singleOptional()
+                        .flatMap(userId -> indexSession(exchange, oat, userId.orElse(null))))
                 // Redirect back to the original endpoint
                 .then(redirect.onAuthenticationSuccess(exchange, authentication));
     }
 
+    /**
+     * Sets the session attributes the user id, subject and Keycloak {@code sid} indexes are resolved
+     * from (see {@link SessionIndexConfig}), so the session can later be revoked by any of them.
+     */
+    private Mono<Void> indexSession(WebFilterExchange exchange, OAuth2AuthenticationToken oat, String userId) {
+        OidcUser user = oat.getPrincipal() instanceof OidcUser oidcUser ? oidcUser : null;
+        String sub = user != null ? user.getSubject() : null;
+        String sid = user != null ? user.getIdToken().getClaimAsString("sid") : null;
+        if (userId == null && sub == null && sid == null) {
+            return Mono.empty();
+        }
+        return exchange.getExchange().getSession()
+                .doOnNext(session -> {
+                    putIfPresent(session.getAttributes(), SessionIndexConfig.USER_ID_INDEX_NAME, userId);
+                    putIfPresent(session.getAttributes(), SessionIndexConfig.SUB_INDEX_NAME, sub);
+                    putIfPresent(session.getAttributes(), SessionIndexConfig.SID_INDEX_NAME, sid);
+                })
+                .then();
+    }
+
+    private static void putIfPresent(Map<String, Object> attributes, String name, String value) {
+        if (value != null) {
+            attributes.put(name, value);
+        }
+    }
+
+    /**
+     * The user id carried by the login's tokens: in the ID token or user info, else in the access
+     * token. The access token is only parsed, not verified; it came straight from the token
+     * endpoint in this same code exchange.
+     */
+    private String userIdOf(OAuth2AuthenticationToken oat, OAuth2AuthorizedClient client) {
+        if (oat.getPrincipal() instanceof OidcUser user) {
+            Object claim = user.getAttribute(userIdClaim);
+            if (claim != null) {
+                return claim.toString();
+            }
+        }
+        OAuth2AccessToken accessToken = client.getAccessToken();
+        if (accessToken == null) {
+            return null;
+        }
+        try {
+            Object claim = JWTParser.parse(accessToken.getTokenValue()).getJWTClaimsSet().getClaim(userIdClaim);
+            return claim != null ? claim.toString() : null;
+        } catch (ParseException e) {
+            // Opaque or malformed token: fall back to the full bootstrap path
+            return null;
+        }
+    }
+
     /** Refresh access (and possibly refresh) token, then save back to the repo. */
     private Mono<OAuth2AuthorizedClient> refreshAuthorizedClient(
             OAuth2AuthorizedClient client,
@@ -71,7 +199,7 @@ public class SuccessHandler implements ServerAuthenticationSuccessHandler {
             return Mono.just(client);
         }
 
-        return keycloakClient.refreshAccessToken(currentRt.getTokenValue())
+        return refreshStage.time(keycloakClient.refreshAccessToken(currentRt.getTokenValue()))
                 .flatMap(tok -> {
                     Instant now = Instant.now();
                     var newAccess = getOAuth2AccessToken(client, tok, now);
@@ -88,8 +216,8 @@ public class SuccessHandler implements ServerAuthenticationSuccessHandler {
                             newRefresh
                     );
 
-                    return authorizedClientRepository
-                            .saveAuthorizedClient(exchanged, oat, exchange.getExchange())
+                    return saveStage.time(authorizedClientRepository
+                                    .saveAuthorizedClient(exchanged, oat, exchange.getExchange()))
                             .thenReturn(exchanged);
                 });
     }
@@ -0,0 +1,78 @@
+package com.mochafund.authgateway.common;
+
+import io.micrometer.context.ContextRegistry;
+import org.slf4j.MDC;
+import reactor.util.context.ContextView;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Correlation IDs shared by the HTTP filters, logging and event envelopes.
+ * <p>
+ * IDs are UUIDv7: 48 bits of epoch millis followed by random bits from {@link ThreadLocalRandom}, so
+ * they sort by creation time, fit {@code EventEnvelope.correlationId}, and generating one touches
+ * only per-thread state (unlike {@link UUID#randomUUID()}, which serialises on a shared SecureRandom).
+ */
+public final class CorrelationIds {
+
+    public static final String HEADER = "X-Correlation-Id";
+
+    /** Key used in the Reactor {@code Context}, the MDC and exchange attributes. */
+    public static final String KEY = "correlationId";
+
+    private static final long VERSION_7 = 0x7000L;
+    private static final long VARIANT_MASK = 0x3FFF_FFFF_FFFF_FFFFL;
+    private static final long VARIANT_IETF = 0x8000_0000_0000_0000L;
+
+    private CorrelationIds() {
+    }
+
+    public static UUID next() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long msb = (System.currentTimeMillis() << 16) | VERSION_7 | (random.nextInt() & 0x0FFF);
+        long lsb = (random.nextLong() & VARIANT_MASK) | VARIANT_IETF;
+        return new UUID(msb, lsb);
+    }
+
+    /**
+     * Whether an inbound header value can be reused as-is: a canonical 36-character UUID of any
+     * version. Checked by hand so malformed or hostile values are rejected without an exception.
+     */
+    public static boolean isValid(String value) {
+        if (value == null || value.length() != 36) {
+            return false;
+        }
+        for (int i = 0; i < 36; i++) {
+            char c = value.charAt(i);
+            if (i == 8 || i == 13 || i == 18 || i == 23) {
+                if (c != '-') {
+                    return false;
+                }
+            } else if (!isHex(c)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isHex(char c) {
+        return (c >= '0' && c <= '9') || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
+    }
+
+    public static String fromContext(ContextView context) {
+        return context.getOrDefault(KEY, null);
+    }
+
+    /**
+     * Mirrors the Reactor {@code Context} entry into the MDC. With automatic context propagation
+     * enabled, Reactor restores it only where execution hops threads rather than around every operator.
+     */
+    public static void registerMdcAccessor() {
+        ContextRegistry.getInstance().registerThreadLocalAccessor(
+                KEY,
+                () -> MDC.get(KEY),
+                value -> MDC.put(KEY, value),
+                () -> MDC.remove(KEY));
+    }
+}
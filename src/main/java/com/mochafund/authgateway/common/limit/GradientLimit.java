@@ -0,0 +1,133 @@
+package com.mochafund.authgateway.common.limit;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Concurrency limit that adapts to observed latency, after the gradient algorithm of Netflix's
+ * concurrency-limits (Gradient2).
+ * <p>
+ * Completed calls feed a short-term average latency per {@code updateInterval}; a slow exponential
+ * average of those tracks the unloaded latency. When recent latency rises above it (beyond
+ * {@code tolerance}), the limit shrinks by their ratio; otherwise it grows by about its square root per
+ * interval. The limit is left alone while fewer than half of it are in use, so an idle route does not
+ * inflate it.
+ * <p>
+ * The request path only touches lock-free state: a CAS on the in-flight count to acquire, and striped
+ * adders to record latency. Recalculation runs on whichever releasing thread first sees the interval
+ * elapse; the others skip it.
+ */
+public class GradientLimit {
+
+    private static final double SMOOTHING = 0.2;
+    private static final int LONG_WINDOW = 100;
+    private static final int MIN_SAMPLES = 10;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double tolerance;
+    private final long updateIntervalNanos;
+
+    private volatile double limit;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private final LongAdder rttSumNanos = new LongAdder();
+    private final LongAdder samples = new LongAdder();
+    private final AtomicInteger peakInFlight = new AtomicInteger();
+    private final AtomicLong nextUpdate;
+    private final AtomicBoolean updating = new AtomicBoolean();
+    private double longRttNanos;
+
+    public GradientLimit(int initialLimit, int minLimit, int maxLimit, double tolerance, Duration updateInterval) {
+        if (minLimit < 1 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("Require 1 <= minLimit <= maxLimit");
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.tolerance = tolerance;
+        this.updateIntervalNanos = updateInterval.toNanos();
+        this.limit = Math.clamp(initialLimit, minLimit, maxLimit);
+        this.nextUpdate = new AtomicLong(System.nanoTime() + updateIntervalNanos);
+    }
+
+    /** Takes a slot, or returns {@code false} if the limit is reached. A successful call must be paired with a release. */
+    public boolean tryAcquire() {
+        int max = (int) limit;
+        while (true) {
+            int current = inFlight.get();
+            if (current >= max) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                peakInFlight.accumulateAndGet(current + 1, Math::max);
+                return true;
+            }
+        }
+    }
+
+    /** Returns a slot, feeding {@code rttNanos} into the limit. */
+    public void release(long rttNanos) {
+        inFlight.decrementAndGet();
+        rttSumNanos.add(rttNanos);
+        samples.increment();
+        maybeUpdate(System.nanoTime());
+    }
+
+    /** Returns a slot without a latency sample, e.g. for a cancelled or failed call. */
+    public void releaseWithoutSample() {
+        inFlight.decrementAndGet();
+    }
+
+    public int limit() {
+        return (int) limit;
+    }
+
+    public int inFlight() {
+        return inFlight.get();
+    }
+
+    private void maybeUpdate(long now) {
+        long due = nextUpdate.get();
+        if (now < due || samples.sum() < MIN_SAMPLES || !updating.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            if (!nextUpdate.compareAndSet(due, now + updateIntervalNanos)) {
+                return;
+            }
+            long count = samples.sumThenReset();
+            long sum = rttSumNanos.sumThenReset();
+            int peak = peakInFlight.getAndSet(inFlight.get());
+            if (count == 0) {
+                return;
+            }
+            double shortRtt = (double) sum / count;
+            update(shortRtt, peak);
+        } finally {
+            updating.set(false);
+        }
+    }
+
+    private void update(double shortRtt, int peak) {
+        if (longRttNanos == 0) {
+            longRttNanos = shortRtt;
+        } else {
+            longRttNanos += (shortRtt - longRttNanos) / LONG_WINDOW;
+        }
+        // After a sustained latency shift the long average would otherwise take minutes to follow
+        if (longRttNanos / shortRtt > 2) {
+            longRttNanos *= 0.95;
+        }
+
+        double current = limit;
+        if (peak < current / 2) {
+            return;
+        }
+        double gradient = Math.clamp(tolerance * longRttNanos / shortRtt, 0.5, 1.0);
+        double target = current * gradient + Math.sqrt(current);
+        limit = Math.clamp(current * (1 - SMOOTHING) + target * SMOOTHING, minLimit, maxLimit);
+    }
+}
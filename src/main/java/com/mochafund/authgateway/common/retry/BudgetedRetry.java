@@ -0,0 +1,120 @@
+package com.mochafund.authgateway.common.retry;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.net.ConnectException;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Predicate;
+
+/**
+ * Timeout and retry policy for calls to one upstream. Each attempt gets its own timeout; attempts
+ * that fail before the upstream could answer (connection errors, timeouts) or with 502/503/504 are
+ * retried with jittered exponential backoff, as long as the upstream's {@link RetryBudget} allows.
+ * Other errors, 4xx included, are passed through untouched. Calls that must not reach the upstream
+ * twice narrow this to {@link #isConnectFailure}.
+ * <p>
+ * Cancelling the returned {@code Mono} cancels the attempt in flight or the pending backoff, so a
+ * caller that gives up does not leave retries running.
+ */
+public class BudgetedRetry {
+
+    private final RetryBudget budget;
+    private final int maxRetries;
+    private final Duration backoff;
+    private final Duration maxBackoff;
+    private final Duration attemptTimeout;
+    private final Counter retried;
+    private final Counter exhausted;
+
+    public BudgetedRetry(
+            MeterRegistry meterRegistry,
+            String upstream,
+            RetryBudget budget,
+            int maxRetries,
+            Duration backoff,
+            Duration maxBackoff,
+            Duration attemptTimeout
+    ) {
+        this.budget = budget;
+        this.maxRetries = maxRetries;
+        this.backoff = backoff;
+        this.maxBackoff = maxBackoff;
+        this.attemptTimeout = attemptTimeout;
+        this.retried = Counter.builder("authgw.retry.attempts")
+                .description("Retries sent to an upstream after a failed attempt")
+                .tag("upstream", upstream)
+                .register(meterRegistry);
+        this.exhausted = Counter.builder("authgw.retry.budget.exhausted")
+                .description("Failed calls not retried because the upstream's retry budget was empty")
+                .tag("upstream", upstream)
+                .register(meterRegistry);
+        Gauge.builder("authgw.retry.budget.balance", budget, RetryBudget::available)
+                .description("Retries the budget would currently allow beyond the per-second reserve")
+                .tag("upstream", upstream)
+                .register(meterRegistry);
+    }
+
+    /** Applies the policy to {@code call}, which is re-subscribed for each attempt. */
+    public <T> Mono<T> apply(Mono<T> call) {
+        return apply(call, BudgetedRetry::isRetryable);
+    }
+
+    /** Applies the policy to {@code call}, retrying only the failures {@code retryable} accepts. */
+    public <T> Mono<T> apply(Mono<T> call, Predicate<Throwable> retryable) {
+        Mono<T> attempt = call.timeout(attemptTimeout);
+        return Mono.defer(() -> {
+            budget.deposit();
+            return attempt.retryWhen(Retry.from(signals -> signals.concatMap(signal -> {
+                Throwable failure = signal.failure();
+                if (!retryable.test(failure) || signal.totalRetries() >= maxRetries) {
+                    return Mono.error(failure);
+                }
+                if (!budget.tryWithdraw()) {
+                    exhausted.increment();
+                    return Mono.error(failure);
+                }
+                retried.increment();
+                return Mono.delay(backoff(signal.totalRetries()));
+            })));
+        });
+    }
+
+    private Duration backoff(long retry) {
+        long base = Math.min(maxBackoff.toMillis(), backoff.toMillis() << Math.min(retry, 20));
+        // Jitter over the upper half, so a burst of failures does not come back in lockstep
+        return Duration.ofMillis(base / 2 + ThreadLocalRandom.current().nextLong(base / 2 + 1));
+    }
+
+    private static boolean isRetryable(Throwable failure) {
+        if (failure instanceof WebClientResponseException e) {
+            int status = e.getStatusCode().value();
+            return status == 502 || status == 503 || status == 504;
+        }
+        return failure instanceof WebClientRequestException || failure instanceof TimeoutException;
+    }
+
+    /**
+     * True when the connection could not be made, so the request never left this node. A timeout or
+     * a 5xx says nothing about whether the upstream acted on it.
+     */
+    public static boolean isConnectFailure(Throwable failure) {
+        if (!(failure instanceof WebClientRequestException)) {
+            return false;
+        }
+        for (Throwable cause = failure.getCause(); cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConnectException || cause instanceof UnknownHostException) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,86 @@
+package com.mochafund.authgateway.common.retry;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caps extra attempts (retries, hedges) at a fraction of original requests, after Finagle's retry
+ * budget. Every original request deposits {@code ratio} of a token; every extra attempt withdraws a
+ * whole one. On top of that, {@code minPerSecond} attempts per second are always allowed, so a quiet
+ * node can still ride out a single blip.
+ * <p>
+ * When an upstream is down every call fails and retries, so an unbudgeted policy multiplies the load
+ * on it by the attempt count. With a budget the extra load stays near {@code ratio} no matter how
+ * many calls fail. The balance is capped, so a long quiet period cannot save up a retry storm.
+ * <p>
+ * State is two atomics; deposits and withdrawals are a single CAS in the common case.
+ */
+public class RetryBudget {
+
+    private static final long SCALE = 1000;
+
+    private final long deposit;
+    private final long capacity;
+    private final int minPerSecond;
+
+    private final AtomicLong balance = new AtomicLong();
+    /** Current second in the high 32 bits, reserve attempts used in it in the low 32. */
+    private final AtomicLong reserve = new AtomicLong();
+
+    public RetryBudget(double ratio, int minPerSecond, int maxBalance) {
+        if (ratio < 0 || ratio > 1 || minPerSecond < 0 || maxBalance < 0) {
+            throw new IllegalArgumentException("Require 0 <= ratio <= 1 and non-negative minPerSecond, maxBalance");
+        }
+        this.deposit = Math.round(ratio * SCALE);
+        this.capacity = maxBalance * SCALE;
+        this.minPerSecond = minPerSecond;
+    }
+
+    /** Records an original request. */
+    public void deposit() {
+        long current;
+        do {
+            current = balance.get();
+            if (current >= capacity) {
+                return;
+            }
+        } while (!balance.compareAndSet(current, Math.min(capacity, current + deposit)));
+    }
+
+    /** Takes one extra attempt from the budget, or returns {@code false} if none is left. */
+    public boolean tryWithdraw() {
+        return tryReserve() || tryBalance();
+    }
+
+    /** Extra attempts the balance would allow right now, not counting the per-second reserve. */
+    public double available() {
+        return (double) balance.get() / SCALE;
+    }
+
+    private boolean tryBalance() {
+        long current;
+        do {
+            current = balance.get();
+            if (current < SCALE) {
+                return false;
+            }
+        } while (!balance.compareAndSet(current, current - SCALE));
+        return true;
+    }
+
+    private boolean tryReserve() {
+        if (minPerSecond == 0) {
+            return false;
+        }
+        long second = System.nanoTime() / 1_000_000_000L;
+        while (true) {
+            long current = reserve.get();
+            long used = (current >>> 32) == (second & 0xFFFF_FFFFL) ? current & 0xFFFF_FFFFL : 0;
+            if (used >= minPerSecond) {
+                return false;
+            }
+            if (reserve.compareAndSet(current, (second << 32) | (used + 1))) {
+                return true;
+            }
+        }
+    }
+}
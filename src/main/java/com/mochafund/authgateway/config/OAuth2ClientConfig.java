@@ -0,0 +1,60 @@
+package com.mochafund.authgateway.config;
+
+import com.mochafund.authgateway.auth.SingleFlightRefreshTokenProvider;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.security.oauth2.client.ReactiveOAuth2AuthorizedClientManager;
+import org.springframework.security.oauth2.client.ReactiveOAuth2AuthorizedClientProviderBuilder;
+import org.springframework.security.oauth2.client.oidc.userinfo.OidcReactiveOAuth2UserService;
+import org.springframework.security.oauth2.client.oidc.userinfo.OidcUserRequest;
+import org.springframework.security.oauth2.client.registration.ReactiveClientRegistrationRepository;
+import org.springframework.security.oauth2.client.userinfo.ReactiveOAuth2UserService;
+import org.springframework.security.oauth2.client.web.DefaultReactiveOAuth2AuthorizedClientManager;
+import org.springframework.security.oauth2.client.web.server.ServerOAuth2AuthorizedClientRepository;
+import org.springframework.security.oauth2.core.oidc.user.OidcUser;
+import org.springframework.util.StringUtils;
+
+import java.time.Duration;
+
+@Configuration
+public class OAuth2ClientConfig {
+
+    /** Replaces the default manager so {@code TokenRelay} refreshes through the single-flight provider. */
+    @Bean
+    ReactiveOAuth2AuthorizedClientManager authorizedClientManager(
+            ReactiveClientRegistrationRepository registrations,
+            ServerOAuth2AuthorizedClientRepository authorizedClients,
+            MeterRegistry meterRegistry,
+            @Value("${mochafund.token-refresh.clock-skew:60s}") Duration clockSkew,
+            @Value("${mochafund.token-refresh.refresh-ahead:0s}") Duration refreshAhead,
+            @Value("${mochafund.token-refresh.result-ttl:30s}") Duration resultTtl
+    ) {
+        var provider = ReactiveOAuth2AuthorizedClientProviderBuilder.builder()
+                .authorizationCode()
+                .provider(new SingleFlightRefreshTokenProvider(
+                        authorizedClients, meterRegistry, clockSkew, refreshAhead, resultTtl))
+                .build();
+
+        var manager = new DefaultReactiveOAuth2AuthorizedClientManager(registrations, authorizedClients);
+        manager.setAuthorizedClientProvider(provider);
+        return manager;
+    }
+
+    /**
+     * Calls the user-info endpoint only when the ID token lacks the user-name attribute. Keycloak's
+     * ID token already carries {@code preferred_username}, so this saves a round trip per login.
+     */
+    @Bean
+    ReactiveOAuth2UserService<OidcUserRequest, OidcUser> oidcUserService() {
+        var service = new OidcReactiveOAuth2UserService();
+        service.setRetrieveUserInfo(request -> {
+            var userInfoEndpoint = request.getClientRegistration().getProviderDetails().getUserInfoEndpoint();
+            String nameAttribute = userInfoEndpoint.getUserNameAttributeName();
+            return StringUtils.hasText(userInfoEndpoint.getUri())
+                    && (nameAttribute == null || request.getIdToken().getClaim(nameAttribute) == null);
+        });
+        return service;
+    }
+}
@@ -0,0 +1,45 @@
+package com.mochafund.authgateway.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mochafund.authgateway.auth.ProviderSnapshotStore;
+import com.mochafund.authgateway.auth.SnapshotClientRegistrationRepository;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.security.oauth2.client.OAuth2ClientProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Boots the OAuth2 client and the resource server from a local snapshot of Keycloak's discovery
+ * document and JWKS instead of calling Keycloak while the context starts.
+ */
+@Configuration
+@EnableConfigurationProperties(OAuth2ClientProperties.class)
+public class ProviderSnapshotConfig {
+
+    @Bean
+    ProviderSnapshotStore providerSnapshotStore(
+            @Qualifier("keycloakWebClient") WebClient keycloakWebClient,
+            ObjectMapper objectMapper,
+            @Value("${spring.security.oauth2.resourceserver.jwt.issuer-uri}") String issuerUri,
+            @Value("${spring.security.oauth2.resourceserver.jwt.jwk-set-uri}") String jwkSetUri,
+            @Value("${mochafund.oidc.snapshot.path}") Path path,
+            @Value("${mochafund.oidc.snapshot.boot-fetch-timeout:5s}") Duration bootFetchTimeout
+    ) {
+        return new ProviderSnapshotStore(keycloakWebClient, objectMapper, issuerUri, jwkSetUri, path, bootFetchTimeout);
+    }
+
+    /** Replaces Boot's repository, which would run issuer discovery against Keycloak during startup. */
+    @Bean
+    SnapshotClientRegistrationRepository clientRegistrationRepository(
+            OAuth2ClientProperties properties,
+            ProviderSnapshotStore store
+    ) {
+        return new SnapshotClientRegistrationRepository(properties, store.initial().metadata());
+    }
+}
@@ -0,0 +1,88 @@
+package com.mochafund.authgateway.config;
+
+import com.mochafund.authgateway.auth.CachingReactiveJwtDecoder;
+import com.mochafund.authgateway.auth.LogoutTokenValidator;
+import com.mochafund.authgateway.auth.ProviderSnapshotStore;
+import com.mochafund.authgateway.auth.RefreshingJwkSource;
+import com.nimbusds.jose.JOSEObjectType;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.proc.DefaultJOSEObjectTypeVerifier;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.security.oauth2.core.DelegatingOAuth2TokenValidator;
+import org.springframework.security.oauth2.jwt.JwtValidators;
+import org.springframework.security.oauth2.jwt.NimbusReactiveJwtDecoder;
+import org.springframework.security.oauth2.jwt.ReactiveJwtDecoder;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.text.ParseException;
+import java.time.Duration;
+
+@Slf4j
+@Configuration
+public class ResourceServerConfig {
+
+    /** Starts from the boot snapshot's keys when it has them, so the first token is verified without a fetch. */
+    @Bean
+    RefreshingJwkSource jwkSource(
+            @Qualifier("keycloakWebClient") WebClient keycloakWebClient,
+            ProviderSnapshotStore snapshots,
+            @Value("${spring.security.oauth2.resourceserver.jwt.jwk-set-uri}") String jwkSetUri,
+            @Value("${mochafund.jwt.jwks.min-refresh-interval:30s}") Duration minRefreshInterval,
+            @Value("${mochafund.jwt.jwks.max-age:5m}") Duration maxAge
+    ) {
+        var jwkSource = new RefreshingJwkSource(keycloakWebClient, jwkSetUri, minRefreshInterval, maxAge);
+        ProviderSnapshotStore.Snapshot snapshot = snapshots.initial();
+        if (!snapshot.jwks().isEmpty()) {
+            try {
+                jwkSource.publish(JWKSet.parse(snapshot.jwks()), snapshot.fetchedAt());
+            } catch (ParseException e) {
+                log.warn("Ignoring unparseable JWKS in the OIDC provider snapshot: {}", e.toString());
+            }
+        }
+        return jwkSource;
+    }
+
+    /** Picked up by {@code oauth2ResourceServer().jwt()} in place of Boot's issuer-discovery decoder. */
+    @Bean
+    @Primary
+    ReactiveJwtDecoder jwtDecoder(
+            RefreshingJwkSource jwkSource,
+            MeterRegistry meterRegistry,
+            @Value("${spring.security.oauth2.resourceserver.jwt.issuer-uri}") String issuerUri,
+            @Value("${mochafund.jwt.cache.max-size:50000}") long maxSize,
+            @Value("${mochafund.jwt.cache.max-ttl:5m}") Duration maxTtl
+    ) {
+        NimbusReactiveJwtDecoder nimbus = NimbusReactiveJwtDecoder.withJwkSource(jwkSource).build();
+        nimbus.setJwtValidator(JwtValidators.createDefaultWithIssuer(issuerUri));
+
+        var decoder = new CachingReactiveJwtDecoder(nimbus, maxSize, maxTtl, meterRegistry);
+        jwkSource.onKeyRotation(decoder::invalidateAll);
+        return decoder;
+    }
+
+    /**
+     * Verifies back-channel logout tokens against the same cached JWKS. Not cached itself: each logout
+     * token is seen once.
+     */
+    @Bean
+    ReactiveJwtDecoder logoutTokenDecoder(
+            RefreshingJwkSource jwkSource,
+            @Value("${spring.security.oauth2.resourceserver.jwt.issuer-uri}") String issuerUri,
+            @Value("${spring.security.oauth2.client.registration.auth-gateway.client-id}") String clientId
+    ) {
+        NimbusReactiveJwtDecoder decoder = NimbusReactiveJwtDecoder.withJwkSource(jwkSource)
+                // The spec asks for typ logout+jwt; Keycloak sends JWT
+                .jwtProcessorCustomizer(processor -> processor.setJWSTypeVerifier(new DefaultJOSEObjectTypeVerifier<>(
+                        JOSEObjectType.JWT, new JOSEObjectType("logout+jwt"), null)))
+                .build();
+        decoder.setJwtValidator(new DelegatingOAuth2TokenValidator<>(
+                JwtValidators.createDefaultWithIssuer(issuerUri), new LogoutTokenValidator(clientId)));
+        return decoder;
+    }
+}
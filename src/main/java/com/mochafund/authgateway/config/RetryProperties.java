@@ -0,0 +1,28 @@
+package com.mochafund.authgateway.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Timeout and retry policy for the gateway's own calls to each upstream (the identity bootstrap and
+ * the Keycloak token refresh). Each upstream has its own retry budget.
+ */
+@ConfigurationProperties("mochafund.retry")
+public record RetryProperties(
+        @DefaultValue Policy keycloak,
+        @DefaultValue Policy internalGateway
+) {
+
+    public record Policy(
+            @DefaultValue("2") int maxRetries,
+            @DefaultValue("50ms") Duration backoff,
+            @DefaultValue("500ms") Duration maxBackoff,
+            @DefaultValue("3s") Duration attemptTimeout,
+            @DefaultValue("0.1") double budgetRatio,
+            @DefaultValue("10") int minRetriesPerSecond,
+            @DefaultValue("100") int maxBudget
+    ) {
+    }
+}
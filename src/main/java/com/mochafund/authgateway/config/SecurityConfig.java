@@ -38,6 +38,8 @@ public class SecurityConfig {
         return http
                 .authorizeExchange(ex -> ex
                         .pathMatchers("/actuator/**", "/health", "/auth/logged-out").permitAll()
+                        // Authenticated by the signed logout token, not a session or bearer token
+                        .pathMatchers(HttpMethod.POST, "/auth/backchannel-logout").permitAll()
                         .anyExchange().authenticated()
                 )
                 .oauth2Login(o -> o
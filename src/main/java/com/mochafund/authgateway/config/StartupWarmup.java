@@ -0,0 +1,112 @@
+package com.mochafund.authgateway.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+
+import java.time.Duration;
+import java.util.function.Supplier;
+
+/**
+ * Opens connections to Keycloak, the internal gateway (on both the proxy route's client and the
+ * gateway's own WebClient) and Redis before the pod takes traffic. Boot only reports readiness as
+ * {@code ACCEPTING_TRAFFIC} after the application runners return, so the first requests find warm
+ * pools instead of each paying for a TCP and TLS handshake.
+ * <p>
+ * Each upstream gets up to its {@code *-connections} concurrent requests, 0 skips it. Any answer
+ * counts, since only the connection matters; failures are logged and never hold startup past
+ * {@code timeout}, so a pod can still come up from its OIDC snapshot while Keycloak is down.
+ */
+@Slf4j
+@Component
+public class StartupWarmup implements ApplicationRunner {
+
+    private final WebClient keycloakWebClient;
+    private final WebClient internalGatewayWebClient;
+    private final HttpClient proxyHttpClient;
+    private final ReactiveStringRedisTemplate redis;
+    private final String issuerUri;
+    private final String internalGatewayUri;
+    private final String internalGatewayPath;
+    private final int keycloakConnections;
+    private final int internalGatewayConnections;
+    private final int redisConnections;
+    private final Duration timeout;
+
+    public StartupWarmup(
+            @Qualifier("keycloakWebClient") WebClient keycloakWebClient,
+            @Qualifier("internalGatewayWebClient") WebClient internalGatewayWebClient,
+            HttpClient proxyHttpClient,
+            ReactiveStringRedisTemplate redis,
+            @Value("${spring.security.oauth2.resourceserver.jwt.issuer-uri}") String issuerUri,
+            @Value("${mochafund.internal-gateway.uri}") String internalGatewayUri,
+            @Value("${mochafund.startup.warmup.internal-gateway-path:/}") String internalGatewayPath,
+            @Value("${mochafund.startup.warmup.keycloak-connections:4}") int keycloakConnections,
+            @Value("${mochafund.startup.warmup.internal-gateway-connections:8}") int internalGatewayConnections,
+            @Value("${mochafund.startup.warmup.redis-connections:4}") int redisConnections,
+            @Value("${mochafund.startup.warmup.timeout:10s}") Duration timeout
+    ) {
+        this.keycloakWebClient = keycloakWebClient;
+        this.internalGatewayWebClient = internalGatewayWebClient;
+        this.proxyHttpClient = proxyHttpClient;
+        this.redis = redis;
+        this.issuerUri = issuerUri;
+        this.internalGatewayUri = internalGatewayUri;
+        this.internalGatewayPath = internalGatewayPath;
+        this.keycloakConnections = keycloakConnections;
+        this.internalGatewayConnections = internalGatewayConnections;
+        this.redisConnections = redisConnections;
+        this.timeout = timeout;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        long start = System.nanoTime();
+        Mono.when(
+                        warm("keycloak", keycloakConnections, () -> touch(keycloakWebClient, issuerUri + "/.well-known/openid-configuration")),
+                        warm("internal-gateway", internalGatewayConnections, () -> touch(internalGatewayWebClient, internalGatewayPath)),
+                        proxyHttpClient.warmup().then(warm("proxy", internalGatewayConnections, this::touchProxy)),
+                        warm("redis", redisConnections, this::ping))
+                .timeout(timeout, Mono.fromRunnable(() -> log.warn("Startup warmup did not finish within {}", timeout)))
+                .block();
+        log.info("Startup warmup took {} ms", Duration.ofNanos(System.nanoTime() - start).toMillis());
+    }
+
+    private static Mono<Void> warm(String upstream, int connections, Supplier<Mono<?>> call) {
+        if (connections <= 0) {
+            return Mono.empty();
+        }
+        return Flux.range(0, connections)
+                .flatMap(i -> Mono.defer(call::get))
+                .then()
+                .onErrorResume(ex -> {
+                    log.warn("Startup warmup of {} failed: {}", upstream, ex.toString());
+                    return Mono.empty();
+                });
+    }
+
+    private static Mono<Void> touch(WebClient webClient, String uri) {
+        return webClient.get()
+                .uri(uri)
+                .exchangeToMono(response -> response.releaseBody());
+    }
+
+    private Mono<Void> touchProxy() {
+        return proxyHttpClient.get()
+                .uri(internalGatewayUri + internalGatewayPath)
+                .responseSingle((response, body) -> body.then());
+    }
+
+    /** Through the template the session code uses, so the PING goes out on its shared connection. */
+    private Mono<String> ping() {
+        return redis.execute(connection -> connection.ping()).next();
+    }
+}
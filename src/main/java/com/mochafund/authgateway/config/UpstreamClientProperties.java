@@ -0,0 +1,29 @@
+package com.mochafund.authgateway.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Connection settings for the long-lived WebClients the gateway uses to call its own upstreams
+ * (not the proxied {@code /api/**} route, which is configured under {@code spring.cloud.gateway}).
+ */
+@ConfigurationProperties("mochafund.http-clients")
+public record UpstreamClientProperties(
+        @DefaultValue Upstream keycloak,
+        @DefaultValue Upstream internalGateway
+) {
+
+    public record Upstream(
+            @DefaultValue("50") int maxConnections,
+            @DefaultValue("200") int pendingAcquireMaxCount,
+            @DefaultValue("2s") Duration pendingAcquireTimeout,
+            @DefaultValue("2s") Duration connectTimeout,
+            @DefaultValue("5s") Duration responseTimeout,
+            @DefaultValue("30s") Duration maxIdleTime,
+            @DefaultValue("5m") Duration maxLifeTime,
+            @DefaultValue("false") boolean http2
+    ) {
+    }
+}
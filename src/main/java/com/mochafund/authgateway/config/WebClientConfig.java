@@ -0,0 +1,107 @@
+package com.mochafund.authgateway.config;
+
+import com.mochafund.authgateway.common.retry.BudgetedRetry;
+import com.mochafund.authgateway.common.retry.RetryBudget;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.netty.channel.ChannelOption;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+/**
+ * One long-lived WebClient per upstream, each on its own connection pool so a slow Keycloak
+ * cannot starve calls to the internal gateway and vice versa. Pool metrics are published under
+ * {@code reactor.netty.connection.provider.*} tagged with the pool name. Each upstream also gets a
+ * {@link BudgetedRetry} for the calls that are safe to repeat.
+ */
+@Configuration
+@EnableConfigurationProperties({UpstreamClientProperties.class, RetryProperties.class})
+public class WebClientConfig {
+
+    @Bean(destroyMethod = "dispose")
+    ConnectionProvider keycloakConnectionProvider(UpstreamClientProperties properties) {
+        return connectionProvider("keycloak", properties.keycloak());
+    }
+
+    @Bean(destroyMethod = "dispose")
+    ConnectionProvider internalGatewayConnectionProvider(UpstreamClientProperties properties) {
+        return connectionProvider("internal-gateway", properties.internalGateway());
+    }
+
+    @Bean
+    WebClient keycloakWebClient(
+            WebClient.Builder builder,
+            UpstreamClientProperties properties,
+            @Qualifier("keycloakConnectionProvider") ConnectionProvider pool,
+            @Value("${keycloak.admin.base-url}") String baseUrl
+    ) {
+        return webClient(builder, pool, properties.keycloak(), baseUrl);
+    }
+
+    @Bean
+    WebClient internalGatewayWebClient(
+            WebClient.Builder builder,
+            UpstreamClientProperties properties,
+            @Qualifier("internalGatewayConnectionProvider") ConnectionProvider pool,
+            @Value("${mochafund.internal-gateway.uri}") String baseUrl
+    ) {
+        return webClient(builder, pool, properties.internalGateway(), baseUrl);
+    }
+
+    @Bean
+    BudgetedRetry keycloakRetry(RetryProperties properties, MeterRegistry meterRegistry) {
+        return retry(meterRegistry, "keycloak", properties.keycloak());
+    }
+
+    @Bean
+    BudgetedRetry internalGatewayRetry(RetryProperties properties, MeterRegistry meterRegistry) {
+        return retry(meterRegistry, "internal-gateway", properties.internalGateway());
+    }
+
+    private static BudgetedRetry retry(MeterRegistry meterRegistry, String upstream, RetryProperties.Policy policy) {
+        var budget = new RetryBudget(policy.budgetRatio(), policy.minRetriesPerSecond(), policy.maxBudget());
+        return new BudgetedRetry(meterRegistry, upstream, budget, policy.maxRetries(),
+                policy.backoff(), policy.maxBackoff(), policy.attemptTimeout());
+    }
+
+    private static ConnectionProvider connectionProvider(String name, UpstreamClientProperties.Upstream upstream) {
+        return ConnectionProvider.builder(name)
+                .maxConnections(upstream.maxConnections())
+                .pendingAcquireMaxCount(upstream.pendingAcquireMaxCount())
+                .pendingAcquireTimeout(upstream.pendingAcquireTimeout())
+                .maxIdleTime(upstream.maxIdleTime())
+                .maxLifeTime(upstream.maxLifeTime())
+                .evictInBackground(upstream.maxIdleTime())
+                .metrics(true)
+                .build();
+    }
+
+    private static WebClient webClient(
+            WebClient.Builder builder,
+            ConnectionProvider pool,
+            UpstreamClientProperties.Upstream upstream,
+            String baseUrl) {
+        HttpClient httpClient = HttpClient.create(pool)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) upstream.connectTimeout().toMillis())
+                .option(ChannelOption.SO_KEEPALIVE, true)
+                .keepAlive(true)
+                .responseTimeout(upstream.responseTimeout());
+        if (upstream.http2()) {
+            httpClient = httpClient.protocol(baseUrl.startsWith("https")
+                    ? new HttpProtocol[]{HttpProtocol.H2, HttpProtocol.HTTP11}
+                    : new HttpProtocol[]{HttpProtocol.H2C, HttpProtocol.HTTP11});
+        }
+
+        return builder.clone()
+                .baseUrl(baseUrl)
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .build();
+    }
+}
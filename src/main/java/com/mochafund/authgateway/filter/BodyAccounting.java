@@ -0,0 +1,287 @@
+package com.mochafund.authgateway.filter;
+
+import io.micrometer.context.ContextRegistry;
+import io.micrometer.context.ThreadLocalAccessor;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscription;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferLimitException;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import reactor.core.CoreSubscriber;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Operators;
+import reactor.util.context.Context;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-route state for {@link StreamingBodyGatewayFilterFactory}: how many body bytes the route's
+ * requests hold in the gateway right now, the limits on that, and the meters. Buffers pass through
+ * untouched and demand is passed straight to the source; apart from failing a body that goes over
+ * its limit, this only counts.
+ * <p>
+ * A buffer counts as held from the moment it is handed on until the consumer asks for a replacement.
+ * The consumers here are Reactor Netty's senders, which take an initial batch and ask for more only
+ * as writes complete, so demand beyond the first request stands for buffers written out. That makes
+ * the count an upper bound: a sender refilling in batches is credited a batch at a time. A consumer
+ * that asks for everything up front gives no such signal and is only counted in bytes streamed.
+ */
+class BodyAccounting {
+
+    enum Direction {
+        REQUEST, RESPONSE;
+
+        final String tag = name().toLowerCase();
+    }
+
+    private final AtomicLong buffered = new AtomicLong();
+    private final long maxBodyBuffered;
+    private final long maxBuffered;
+    private final Counter overBodyLimit;
+    private final Counter overRouteLimit;
+    private final Counter requestBytes;
+    private final Counter responseBytes;
+    private final DistributionSummary requestPeak;
+    private final DistributionSummary responsePeak;
+
+    /** Limits are in bytes; 0 turns the limit off. */
+    BodyAccounting(MeterRegistry meterRegistry, String route, long maxBodyBuffered, long maxBuffered) {
+        this.maxBodyBuffered = maxBodyBuffered;
+        this.maxBuffered = maxBuffered;
+        this.overBodyLimit = rejectedCounter(meterRegistry, route, "body");
+        this.overRouteLimit = rejectedCounter(meterRegistry, route, "route");
+        this.requestBytes = bytesCounter(meterRegistry, route, Direction.REQUEST);
+        this.responseBytes = bytesCounter(meterRegistry, route, Direction.RESPONSE);
+        this.requestPeak = peakSummary(meterRegistry, route, Direction.REQUEST);
+        this.responsePeak = peakSummary(meterRegistry, route, Direction.RESPONSE);
+        Gauge.builder("authgw.gateway.body.buffered", buffered, AtomicLong::get)
+                .description("Body bytes handed on by the gateway and not yet written out, across the route's requests")
+                .tag("route", route)
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    private static Counter bytesCounter(MeterRegistry meterRegistry, String route, Direction direction) {
+        return Counter.builder("authgw.gateway.body.bytes")
+                .description("Body bytes streamed through the gateway")
+                .tag("route", route)
+                .tag("direction", direction.tag)
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    private static Counter rejectedCounter(MeterRegistry meterRegistry, String route, String reason) {
+        return Counter.builder("authgw.gateway.body.rejected")
+                .description("Requests refused or bodies failed for holding too much memory, by which limit was hit")
+                .tag("route", route)
+                .tag("reason", reason)
+                .register(meterRegistry);
+    }
+
+    private static DistributionSummary peakSummary(MeterRegistry meterRegistry, String route, Direction direction) {
+        return DistributionSummary.builder("authgw.gateway.body.buffered.peak")
+                .description("Most bytes one body had in the gateway at once")
+                .tag("route", route)
+                .tag("direction", direction.tag)
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    long buffered() {
+        return buffered.get();
+    }
+
+    /** False, and counted as a rejection, when the route's requests already hold its whole allowance. */
+    boolean tryAdmit() {
+        if (maxBuffered > 0 && buffered.get() >= maxBuffered) {
+            overRouteLimit.increment();
+            return false;
+        }
+        return true;
+    }
+
+    Flux<DataBuffer> track(Publisher<? extends DataBuffer> body, Direction direction) {
+        Counter bytes = direction == Direction.REQUEST ? requestBytes : responseBytes;
+        DistributionSummary peak = direction == Direction.REQUEST ? requestPeak : responsePeak;
+        return Flux.<DataBuffer>from(body)
+                .transform(Operators.lift((scannable, actual) -> new TrackingSubscriber(actual, bytes, peak)));
+    }
+
+    /** Counts a body written one flushed group at a time; each group is a single small event. */
+    Flux<Flux<DataBuffer>> count(Publisher<? extends Publisher<? extends DataBuffer>> groups) {
+        return Flux.from(groups).map(group -> Flux.<DataBuffer>from(group)
+                .doOnNext(buffer -> responseBytes.increment(buffer.readableByteCount())));
+    }
+
+    /**
+     * Drops the entries that Reactor copies into thread-locals (the MDC correlation ID, the current
+     * observation), so each body chunk is not wrapped in a restore and reset of all of them. Nothing
+     * on the byte path logs or observes; the exchange's own signals still see the full context.
+     */
+    static Context withoutThreadLocals(Context context) {
+        for (ThreadLocalAccessor<?> accessor : ContextRegistry.getInstance().getThreadLocalAccessors()) {
+            context = context.delete(accessor.key());
+        }
+        return context;
+    }
+
+    private final class TrackingSubscriber implements CoreSubscriber<DataBuffer>, Subscription {
+
+        private final CoreSubscriber<? super DataBuffer> actual;
+        private final Counter bytes;
+        private final DistributionSummary peak;
+        private Context context;
+        private Subscription upstream;
+
+        // Guarded by this. Sizes of the buffers handed on and not yet replaced, oldest first
+        private int[] sizes = new int[16];
+        private int head;
+        private int count;
+        private long held;
+        private long maxHeld;
+        private boolean primed;
+        private boolean unbounded;
+        private boolean done;
+        // Set once this body went over its limit; the source may still signal before the cancel lands
+        private volatile boolean failed;
+
+        TrackingSubscriber(CoreSubscriber<? super DataBuffer> actual, Counter bytes, DistributionSummary peak) {
+            this.actual = actual;
+            this.bytes = bytes;
+            this.peak = peak;
+        }
+
+        @Override
+        public Context currentContext() {
+            if (context == null) {
+                context = withoutThreadLocals(actual.currentContext());
+            }
+            return context;
+        }
+
+        @Override
+        public void onSubscribe(Subscription s) {
+            if (Operators.validate(upstream, s)) {
+                upstream = s;
+                actual.onSubscribe(this);
+            }
+        }
+
+        @Override
+        public void request(long n) {
+            synchronized (this) {
+                if (!primed) {
+                    primed = true;
+                    unbounded = n == Long.MAX_VALUE;
+                } else {
+                    free(n);
+                }
+            }
+            upstream.request(n);
+        }
+
+        @Override
+        public void onNext(DataBuffer buffer) {
+            if (failed) {
+                DataBufferUtils.release(buffer);
+                return;
+            }
+            int size = buffer.readableByteCount();
+            bytes.increment(size);
+            if (!unbounded) {
+                boolean over = false;
+                synchronized (this) {
+                    if (!done) {
+                        push(size);
+                        over = maxBodyBuffered > 0 && held > maxBodyBuffered;
+                    }
+                }
+                if (over) {
+                    // The consumer keeps asking without writing anything out, so it is aggregating
+                    failed = true;
+                    DataBufferUtils.release(buffer);
+                    overBodyLimit.increment();
+                    release();
+                    upstream.cancel();
+                    actual.onError(new DataBufferLimitException(
+                            "Body held more than " + maxBodyBuffered + " bytes in the gateway at once"));
+                    return;
+                }
+            }
+            actual.onNext(buffer);
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            if (failed) {
+                Operators.onErrorDropped(t, currentContext());
+                return;
+            }
+            release();
+            actual.onError(t);
+        }
+
+        @Override
+        public void onComplete() {
+            if (failed) {
+                return;
+            }
+            release();
+            actual.onComplete();
+        }
+
+        @Override
+        public void cancel() {
+            release();
+            upstream.cancel();
+        }
+
+        private void push(int size) {
+            if (count == sizes.length) {
+                int[] grown = new int[sizes.length * 2];
+                for (int i = 0; i < count; i++) {
+                    grown[i] = sizes[(head + i) & (sizes.length - 1)];
+                }
+                sizes = grown;
+                head = 0;
+            }
+            sizes[(head + count) & (sizes.length - 1)] = size;
+            count++;
+            held += size;
+            maxHeld = Math.max(maxHeld, held);
+            buffered.addAndGet(size);
+        }
+
+        /** A request for n more frees the n oldest buffers; demand beyond what was sent grows the batch instead. */
+        private void free(long n) {
+            long freed = 0;
+            for (long i = Math.min(n, count); i > 0; i--) {
+                freed += sizes[head];
+                head = (head + 1) & (sizes.length - 1);
+                count--;
+            }
+            held -= freed;
+            buffered.addAndGet(-freed);
+        }
+
+        /** Whatever is still counted when the body ends belongs to the consumer's last writes. */
+        private void release() {
+            synchronized (this) {
+                if (done) {
+                    return;
+                }
+                done = true;
+                buffered.addAndGet(-held);
+                held = 0;
+                count = 0;
+            }
+            if (!unbounded) {
+                peak.record(maxHeld);
+            }
+        }
+    }
+}
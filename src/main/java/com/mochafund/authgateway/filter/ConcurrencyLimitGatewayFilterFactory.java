@@ -0,0 +1,147 @@
+package com.mochafund.authgateway.filter;
+
+import com.mochafund.authgateway.common.limit.GradientLimit;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.OrderedGatewayFilter;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.cloud.gateway.support.HasRouteId;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.security.Principal;
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Caps in-flight requests on a route with a {@link GradientLimit}, so a slow upstream makes the
+ * gateway shed load instead of queueing requests, buffers and session saves until it runs out of
+ * memory. Requests over the limit get an immediate 503 with {@code Retry-After}.
+ * <p>
+ * With {@code principalShare} above zero, one principal may also hold at most that share of the
+ * route's current limit, so a single heavy client cannot take every slot. A principal's count is
+ * dropped when its last request finishes, so the map only holds principals with requests in flight.
+ * Runs ahead of the other route filters so shed requests skip token relay as well.
+ */
+@Component
+public class ConcurrencyLimitGatewayFilterFactory extends AbstractGatewayFilterFactory<ConcurrencyLimitGatewayFilterFactory.Config> {
+
+    private final MeterRegistry meterRegistry;
+
+    public ConcurrencyLimitGatewayFilterFactory(MeterRegistry meterRegistry) {
+        super(Config.class);
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public GatewayFilter apply(Config config) {
+        String route = config.getRouteId() != null ? config.getRouteId() : "unknown";
+        var limit = new GradientLimit(config.getInitialLimit(), config.getMinLimit(), config.getMaxLimit(),
+                config.getTolerance(), config.getUpdateInterval());
+
+        Gauge.builder("authgw.gateway.concurrency.limit", limit, GradientLimit::limit)
+                .description("Current adaptive concurrency limit")
+                .tag("route", route)
+                .register(meterRegistry);
+        Gauge.builder("authgw.gateway.concurrency.in-flight", limit, GradientLimit::inFlight)
+                .description("Requests currently holding a concurrency slot")
+                .tag("route", route)
+                .register(meterRegistry);
+        Counter shedByRoute = shedCounter(route, "route");
+        Counter shedByPrincipal = shedCounter(route, "principal");
+
+        ConcurrentHashMap<String, Integer> principals = config.getPrincipalShare() > 0 ? new ConcurrentHashMap<>() : null;
+        String retryAfter = Long.toString(Math.max(1, config.getRetryAfter().toSeconds()));
+
+        GatewayFilter filter = (exchange, chain) -> {
+            if (principals == null) {
+                return limited(exchange, chain, limit, null, shedByRoute, retryAfter);
+            }
+            return exchange.getPrincipal()
+                    .map(Principal::getName)
+                    .defaultIfEmpty("")
+                    .flatMap(name -> {
+                        if (name.isEmpty()) {
+                            return limited(exchange, chain, limit, null, shedByRoute, retryAfter);
+                        }
+                        Runnable release = () -> principals.computeIfPresent(name, (key, held) -> held > 1 ? held - 1 : null);
+                        int cap = Math.max(1, (int) Math.ceil(limit.limit() * config.getPrincipalShare()));
+                        if (principals.merge(name, 1, Integer::sum) > cap) {
+                            release.run();
+                            shedByPrincipal.increment();
+                            return shed(exchange, retryAfter);
+                        }
+                        return limited(exchange, chain, limit, release, shedByRoute, retryAfter);
+                    });
+        };
+        return new OrderedGatewayFilter(filter, Ordered.HIGHEST_PRECEDENCE);
+    }
+
+    private Counter shedCounter(String route, String reason) {
+        return Counter.builder("authgw.gateway.concurrency.shed")
+                .description("Requests rejected with 503 by the concurrency limit, by which limit was hit")
+                .tag("route", route)
+                .tag("reason", reason)
+                .register(meterRegistry);
+    }
+
+    private static Mono<Void> limited(
+            ServerWebExchange exchange,
+            GatewayFilterChain chain,
+            GradientLimit limit,
+            Runnable releasePrincipal,
+            Counter shed,
+            String retryAfter
+    ) {
+        if (!limit.tryAcquire()) {
+            if (releasePrincipal != null) {
+                releasePrincipal.run();
+            }
+            shed.increment();
+            return shed(exchange, retryAfter);
+        }
+        long start = System.nanoTime();
+        return chain.filter(exchange).doFinally(signal -> {
+            if (signal == SignalType.ON_COMPLETE) {
+                limit.release(System.nanoTime() - start);
+            } else {
+                limit.releaseWithoutSample();
+            }
+            if (releasePrincipal != null) {
+                releasePrincipal.run();
+            }
+        });
+    }
+
+    private static Mono<Void> shed(ServerWebExchange exchange, String retryAfter) {
+        var response = exchange.getResponse();
+        response.setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+        response.getHeaders().set(HttpHeaders.RETRY_AFTER, retryAfter);
+        return response.setComplete();
+    }
+
+    @Getter
+    @Setter
+    public static class Config implements HasRouteId {
+        private String routeId;
+        private int initialLimit = 100;
+        private int minLimit = 10;
+        private int maxLimit = 1000;
+        /** Latency may rise this far above the long-term average before the limit shrinks. */
+        private double tolerance = 1.5;
+        private Duration updateInterval = Duration.ofMillis(100);
+        /** Largest share of the route's limit one principal may hold; 0 disables the per-principal cap. */
+        private double principalShare = 0;
+        private Duration retryAfter = Duration.ofSeconds(1);
+    }
+}
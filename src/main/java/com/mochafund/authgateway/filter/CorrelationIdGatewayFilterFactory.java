@@ -1,17 +1,18 @@
 package com.mochafund.authgateway.filter;
 
+import com.mochafund.authgateway.common.CorrelationIds;
 import org.springframework.cloud.gateway.filter.GatewayFilter;
 import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
 import org.springframework.http.server.reactive.ServerHttpRequest;
 import org.springframework.stereotype.Component;
 
-import java.util.UUID;
-
+/**
+ * Forwards the correlation ID assigned by {@link CorrelationIdWebFilter} to the routed service,
+ * generating one only if the web filter did not run for this exchange.
+ */
 @Component
 public class CorrelationIdGatewayFilterFactory extends AbstractGatewayFilterFactory<CorrelationIdGatewayFilterFactory.Config> {
 
-    private static final String CORRELATION_ID_HEADER = "X-Correlation-Id";
-
     public CorrelationIdGatewayFilterFactory() {
         super(Config.class);
     }
@@ -19,10 +20,19 @@ public class CorrelationIdGatewayFilterFactory extends AbstractGatewayFilterFact
     @Override
     public GatewayFilter apply(Config config) {
         return (exchange, chain) -> {
-            String correlationId = UUID.randomUUID().toString();
-
+            String correlationId = exchange.getAttribute(CorrelationIds.KEY);
+            if (correlationId != null
+                    && correlationId.equals(exchange.getRequest().getHeaders().getFirst(CorrelationIds.HEADER))) {
+                return chain.filter(exchange);
+            }
+            if (correlationId == null) {
+                correlationId = CorrelationIds.next().toString();
+                exchange.getAttributes().put(CorrelationIds.KEY, correlationId);
+            }
+
+            String forwarded = correlationId;
             ServerHttpRequest mutatedRequest = exchange.getRequest().mutate()
-                    .header(CORRELATION_ID_HEADER, correlationId)
+                    .headers(h -> h.set(CorrelationIds.HEADER, forwarded))
                     .build();
 
             return chain.filter(exchange.mutate().request(mutatedRequest).build());
@@ -32,4 +42,4 @@ public class CorrelationIdGatewayFilterFactory extends AbstractGatewayFilterFact
     public static class Config {
         // Configuration properties if needed
     }
-}
\ No newline at end of file
+}
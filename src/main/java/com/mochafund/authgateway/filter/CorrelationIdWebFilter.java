@@ -0,0 +1,55 @@
+package com.mochafund.authgateway.filter;
+
+import com.mochafund.authgateway.common.CorrelationIds;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+
+/**
+ * Assigns the request's correlation ID ahead of Spring Security, so login, logout and session
+ * endpoints carry one too, not just the proxied {@code /api/**} route. A well-formed inbound
+ * {@code X-Correlation-Id} is kept; otherwise a new one is generated and set on the request.
+ * The ID is echoed on the response, stored as an exchange attribute and written to the Reactor
+ * {@code Context}, from where it reaches the MDC.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class CorrelationIdWebFilter implements WebFilter {
+
+    public CorrelationIdWebFilter() {
+        CorrelationIds.registerMdcAccessor();
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        ServerHttpRequest request = exchange.getRequest();
+        String inbound = request.getHeaders().getFirst(CorrelationIds.HEADER);
+
+        String correlationId;
+        ServerWebExchange current = exchange;
+        if (CorrelationIds.isValid(inbound)) {
+            correlationId = inbound;
+        } else {
+            correlationId = CorrelationIds.next().toString();
+            current = exchange.mutate()
+                    .request(request.mutate().headers(h -> h.set(CorrelationIds.HEADER, correlationId)).build())
+                    .build();
+        }
+
+        current.getAttributes().put(CorrelationIds.KEY, correlationId);
+        // beforeCommit so a header copied from a proxied response cannot replace ours
+        var response = current.getResponse();
+        response.beforeCommit(() -> {
+            response.getHeaders().set(CorrelationIds.HEADER, correlationId);
+            return Mono.empty();
+        });
+
+        return chain.filter(current).contextWrite(Context.of(CorrelationIds.KEY, correlationId));
+    }
+}
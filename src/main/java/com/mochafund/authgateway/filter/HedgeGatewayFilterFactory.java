@@ -0,0 +1,123 @@
+package com.mochafund.authgateway.filter;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.NettyWriteResponseFilter;
+import org.springframework.cloud.gateway.filter.OrderedGatewayFilter;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.cloud.gateway.support.HasRouteId;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.util.pattern.PathPattern;
+import org.springframework.web.util.pattern.PathPatternParser;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Opts GET and HEAD requests on a route into hedging: if the upstream has not answered after the
+ * route's recent p95 latency (by default), {@link HedgedRoutingFilter} sends the same request again
+ * and uses whichever response arrives first, cancelling the other. Hedges come out of a budget, by
+ * default a tenth of the route's hedgeable requests, so a slow upstream sees at most that much extra
+ * load. Only list paths whose GETs are idempotent; an empty list hedges every GET on the route.
+ * <p>
+ * This filter only marks the exchange. The routing filter sets the winner's status and headers and
+ * leaves its body here, so the other route filters can still change the headers on the way out, as
+ * they can for a response from the regular routing filter.
+ */
+@Component
+public class HedgeGatewayFilterFactory extends AbstractGatewayFilterFactory<HedgeGatewayFilterFactory.Config> {
+
+    static final String POLICY_ATTR = HedgeGatewayFilterFactory.class.getName() + ".policy";
+    static final String BODY_ATTR = HedgeGatewayFilterFactory.class.getName() + ".body";
+
+    private final MeterRegistry meterRegistry;
+
+    public HedgeGatewayFilterFactory(MeterRegistry meterRegistry) {
+        super(Config.class);
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public GatewayFilter apply(Config config) {
+        String route = config.getRouteId() != null ? config.getRouteId() : "unknown";
+        var policy = new HedgePolicy(meterRegistry, route, config);
+        List<PathPattern> paths = config.getPaths().stream()
+                .map(PathPatternParser.defaultInstance::parse)
+                .toList();
+
+        GatewayFilter filter = (exchange, chain) -> {
+            var request = exchange.getRequest();
+            HttpMethod method = request.getMethod();
+            if (method != HttpMethod.GET && method != HttpMethod.HEAD) {
+                return chain.filter(exchange);
+            }
+            if (!paths.isEmpty() && paths.stream().noneMatch(p -> p.matches(request.getPath().pathWithinApplication()))) {
+                return chain.filter(exchange);
+            }
+            exchange.getAttributes().put(POLICY_ATTR, policy);
+            return chain.filter(exchange)
+                    .then(Mono.defer(() -> writeBody(exchange)))
+                    .doOnError(ex -> discardBody(exchange))
+                    .doOnCancel(() -> discardBody(exchange));
+        };
+        // One before the write-response filter (-1), so this runs outside it: the body held back during
+        // the chain is written here only after NettyWriteResponseFilter and routing have completed
+        return new OrderedGatewayFilter(filter, NettyWriteResponseFilter.WRITE_RESPONSE_FILTER_ORDER - 1);
+    }
+
+    private static Mono<Void> writeBody(ServerWebExchange exchange) {
+        Flux<DataBuffer> body = exchange.getAttributes().remove(BODY_ATTR) instanceof Flux<?> f ? cast(f) : null;
+        if (body == null) {
+            return Mono.empty();
+        }
+        ServerHttpResponse response = exchange.getResponse();
+        MediaType contentType = response.getHeaders().getContentType();
+        if (contentType != null && isStreaming(contentType)) {
+            return response.writeAndFlushWith(body.map(Flux::just));
+        }
+        return response.writeWith(body);
+    }
+
+    private static void discardBody(ServerWebExchange exchange) {
+        if (exchange.getAttributes().remove(BODY_ATTR) instanceof Flux<?> body) {
+            HedgedRoutingFilter.discard(cast(body));
+        }
+    }
+
+    private static boolean isStreaming(MediaType contentType) {
+        return MediaType.TEXT_EVENT_STREAM.isCompatibleWith(contentType)
+                || MediaType.APPLICATION_NDJSON.isCompatibleWith(contentType);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Flux<DataBuffer> cast(Flux<?> body) {
+        return (Flux<DataBuffer>) body;
+    }
+
+    @Getter
+    @Setter
+    public static class Config implements HasRouteId {
+        private String routeId;
+        /** Path patterns to hedge; empty hedges every GET and HEAD on the route. */
+        private List<String> paths = new ArrayList<>();
+        /** Latency percentile the hedge delay follows. */
+        private double percentile = 0.95;
+        private Duration minDelay = Duration.ofMillis(10);
+        /** Delay used until enough latency has been seen, and the cap after that. */
+        private Duration maxDelay = Duration.ofSeconds(1);
+        /** Hedges allowed per hedgeable request, averaged over the route's traffic on this node. */
+        private double budgetRatio = 0.1;
+        private int minHedgesPerSecond = 10;
+        private int maxBudget = 100;
+    }
+}
@@ -0,0 +1,118 @@
+package com.mochafund.authgateway.filter;
+
+import com.mochafund.authgateway.common.retry.RetryBudget;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-route state for {@link HedgeGatewayFilterFactory}: when to send a hedge, whether the budget
+ * allows one, and the meters. The delay is the route's recent upstream latency at the configured
+ * percentile, read from a decaying histogram about once a second rather than on every request.
+ */
+class HedgePolicy {
+
+    private static final long REFRESH_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final long MIN_SAMPLES = 20;
+
+    private final double percentile;
+    private final long minDelayNanos;
+    private final long maxDelayNanos;
+    private final RetryBudget budget;
+
+    private final Timer latency;
+    private final Counter primaryWins;
+    private final Counter hedgeWins;
+    private final Counter hedgesSent;
+    private final Counter budgetExhausted;
+
+    private volatile long delayNanos;
+    private final AtomicLong nextRefresh = new AtomicLong();
+
+    HedgePolicy(MeterRegistry meterRegistry, String route, HedgeGatewayFilterFactory.Config config) {
+        this.percentile = config.getPercentile();
+        this.minDelayNanos = config.getMinDelay().toNanos();
+        this.maxDelayNanos = config.getMaxDelay().toNanos();
+        this.budget = new RetryBudget(config.getBudgetRatio(), config.getMinHedgesPerSecond(), config.getMaxBudget());
+        this.delayNanos = maxDelayNanos;
+
+        this.latency = Timer.builder("authgw.gateway.hedge.latency")
+                .description("Time to response headers from the upstream, per attempt, on hedged routes")
+                .tag("route", route)
+                .publishPercentiles(percentile)
+                .distributionStatisticExpiry(Duration.ofMinutes(1))
+                .distributionStatisticBufferLength(3)
+                .register(meterRegistry);
+        this.primaryWins = winCounter(meterRegistry, route, "primary");
+        this.hedgeWins = winCounter(meterRegistry, route, "hedge");
+        this.hedgesSent = Counter.builder("authgw.gateway.hedge.sent")
+                .description("Hedge requests sent because the first attempt was slower than the hedge delay")
+                .tag("route", route)
+                .register(meterRegistry);
+        this.budgetExhausted = Counter.builder("authgw.gateway.hedge.budget.exhausted")
+                .description("Hedges not sent because the route's hedge budget was empty")
+                .tag("route", route)
+                .register(meterRegistry);
+        Gauge.builder("authgw.gateway.hedge.delay", this, p -> p.delayNanos / 1e9)
+                .description("Current wait before a hedge is sent")
+                .tag("route", route)
+                .baseUnit("seconds")
+                .register(meterRegistry);
+    }
+
+    private static Counter winCounter(MeterRegistry meterRegistry, String route, String winner) {
+        return Counter.builder("authgw.gateway.hedge.wins")
+                .description("Hedged requests by which attempt answered first")
+                .tag("route", route)
+                .tag("winner", winner)
+                .register(meterRegistry);
+    }
+
+    /** Called once per hedgeable request, before the first attempt is sent. */
+    Duration start() {
+        budget.deposit();
+        long now = System.nanoTime();
+        long due = nextRefresh.get();
+        if (now - due >= 0 && nextRefresh.compareAndSet(due, now + REFRESH_NANOS)) {
+            delayNanos = currentDelay();
+        }
+        return Duration.ofNanos(delayNanos);
+    }
+
+    /** Takes a hedge from the budget, counting it as sent or as exhausted. */
+    boolean tryHedge() {
+        if (budget.tryWithdraw()) {
+            hedgesSent.increment();
+            return true;
+        }
+        budgetExhausted.increment();
+        return false;
+    }
+
+    void recordLatency(long nanos) {
+        latency.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    void recordWin(boolean hedge) {
+        (hedge ? hedgeWins : primaryWins).increment();
+    }
+
+    private long currentDelay() {
+        var snapshot = latency.takeSnapshot();
+        if (snapshot.count() < MIN_SAMPLES) {
+            return maxDelayNanos;
+        }
+        for (ValueAtPercentile value : snapshot.percentileValues()) {
+            if (value.percentile() == percentile) {
+                return Math.clamp((long) value.value(TimeUnit.NANOSECONDS), minDelayNanos, maxDelayNanos);
+            }
+        }
+        return maxDelayNanos;
+    }
+}
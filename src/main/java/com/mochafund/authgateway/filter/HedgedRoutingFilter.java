@@ -0,0 +1,180 @@
+package com.mochafund.authgateway.filter;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.filter.NettyRoutingFilter;
+import org.springframework.cloud.gateway.filter.headers.HttpHeadersFilter;
+import org.springframework.core.Ordered;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+
+import java.net.URI;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.CLIENT_RESPONSE_HEADER_NAMES;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.ORIGINAL_RESPONSE_CONTENT_TYPE_ATTR;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.PRESERVE_HOST_HEADER_ATTRIBUTE;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.isAlreadyRouted;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.setAlreadyRouted;
+
+/**
+ * Routes exchanges marked by {@link HedgeGatewayFilterFactory} in place of the regular routing
+ * filter. The request goes out once; if no response headers have arrived after the route's hedge
+ * delay, and the hedge budget allows, it goes out again. The first response wins and the other
+ * attempt is cancelled, which aborts its connection. If the first attempt fails outright, the hedge
+ * (if sent) still gets its chance; otherwise the failure is returned as the regular filter would.
+ * <p>
+ * Uses the gateway's own {@link HttpClient} and header filters, so hedged requests carry the same
+ * forwarded headers and pool settings as every other proxied request.
+ */
+@Component
+public class HedgedRoutingFilter implements GlobalFilter, Ordered {
+
+    private final WebClient webClient;
+    private final ObjectProvider<List<HttpHeadersFilter>> headersFiltersProvider;
+    private volatile List<HttpHeadersFilter> headersFilters;
+
+    public HedgedRoutingFilter(HttpClient httpClient, ObjectProvider<List<HttpHeadersFilter>> headersFiltersProvider) {
+        this.webClient = WebClient.builder()
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .build();
+        this.headersFiltersProvider = headersFiltersProvider;
+    }
+
+    @Override
+    public int getOrder() {
+        return NettyRoutingFilter.ORDER - 1;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        HedgePolicy policy = exchange.getAttribute(HedgeGatewayFilterFactory.POLICY_ATTR);
+        URI url = exchange.getAttribute(GATEWAY_REQUEST_URL_ATTR);
+        if (policy == null || url == null || isAlreadyRouted(exchange)
+                || !("http".equals(url.getScheme()) || "https".equals(url.getScheme()))) {
+            return chain.filter(exchange);
+        }
+        setAlreadyRouted(exchange);
+
+        HttpMethod method = exchange.getRequest().getMethod();
+        HttpHeaders headers = new HttpHeaders();
+        headers.addAll(HttpHeadersFilter.filterRequest(headersFilters(), exchange));
+        if (!Boolean.TRUE.equals(exchange.getAttribute(PRESERVE_HOST_HEADER_ATTRIBUTE))) {
+            headers.remove(HttpHeaders.HOST);
+        }
+
+        AtomicBoolean decided = new AtomicBoolean();
+        Mono<Attempt> primary = send(policy, method, url, headers, false, decided);
+        Mono<Attempt> hedge = Mono.delay(policy.start())
+                .flatMap(tick -> policy.tryHedge()
+                        ? send(policy, method, url, headers, true, decided)
+                        : Mono.empty());
+
+        return Mono.firstWithValue(primary, hedge)
+                .onErrorMap(NoSuchElementException.class, HedgedRoutingFilter::firstFailure)
+                .doOnNext(winner -> {
+                    policy.recordWin(winner.hedge());
+                    respond(exchange, winner.response());
+                })
+                .then(chain.filter(exchange));
+    }
+
+    private Mono<Attempt> send(
+            HedgePolicy policy,
+            HttpMethod method,
+            URI url,
+            HttpHeaders headers,
+            boolean hedge,
+            AtomicBoolean decided
+    ) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            AtomicBoolean cancelled = new AtomicBoolean();
+            return webClient.method(method)
+                    .uri(url)
+                    .headers(h -> h.addAll(headers))
+                    .retrieve()
+                    // Upstream errors are proxied as they are, not turned into exceptions
+                    .onStatus(status -> true, response -> Mono.empty())
+                    .toEntityFlux(DataBuffer.class)
+                    .flatMap(response -> {
+                        policy.recordLatency(System.nanoTime() - start);
+                        if (decided.compareAndSet(false, true)) {
+                            return Mono.just(new Attempt(response, hedge));
+                        }
+                        // Answered just after the other attempt won. If the cancel got here first the
+                        // connection is already closed; otherwise nothing else will read this body
+                        if (!cancelled.get()) {
+                            discard(response.getBody());
+                        }
+                        return Mono.empty();
+                    })
+                    .doOnCancel(() -> cancelled.set(true));
+        });
+    }
+
+    private void respond(ServerWebExchange exchange, ResponseEntity<Flux<DataBuffer>> upstream) {
+        var response = exchange.getResponse();
+        response.setStatusCode(upstream.getStatusCode());
+
+        HttpHeaders upstreamHeaders = upstream.getHeaders();
+        if (upstreamHeaders.getContentType() != null) {
+            exchange.getAttributes().put(ORIGINAL_RESPONSE_CONTENT_TYPE_ATTR, upstreamHeaders.getContentType().toString());
+        }
+        HttpHeaders filtered = HttpHeadersFilter.filter(headersFilters(), upstreamHeaders, exchange, HttpHeadersFilter.Type.RESPONSE);
+        if (!filtered.containsKey(HttpHeaders.TRANSFER_ENCODING) && filtered.containsKey(HttpHeaders.CONTENT_LENGTH)) {
+            response.getHeaders().remove(HttpHeaders.TRANSFER_ENCODING);
+        }
+        exchange.getAttributes().put(CLIENT_RESPONSE_HEADER_NAMES, filtered.keySet());
+        response.getHeaders().addAll(filtered);
+
+        Flux<DataBuffer> body = upstream.getBody();
+        if (body != null) {
+            exchange.getAttributes().put(HedgeGatewayFilterFactory.BODY_ATTR, body);
+        }
+    }
+
+    private List<HttpHeadersFilter> headersFilters() {
+        if (headersFilters == null) {
+            headersFilters = headersFiltersProvider.getIfAvailable(List::of);
+        }
+        return headersFilters;
+    }
+
+    /** Reads and releases a body nobody will write, so its connection goes back to the pool. */
+    static void discard(Flux<DataBuffer> body) {
+        if (body != null) {
+            body.subscribe(DataBufferUtils::release, ex -> {
+            });
+        }
+    }
+
+    /** Both attempts failed, or the first failed and no hedge was sent: surface the first error. */
+    private static Throwable firstFailure(NoSuchElementException ex) {
+        if (ex.getCause() != null) {
+            List<Throwable> failures = Exceptions.unwrapMultiple(ex.getCause());
+            if (!failures.isEmpty()) {
+                return failures.getFirst();
+            }
+        }
+        return ex;
+    }
+
+    private record Attempt(ResponseEntity<Flux<DataBuffer>> response, boolean hedge) {
+    }
+}
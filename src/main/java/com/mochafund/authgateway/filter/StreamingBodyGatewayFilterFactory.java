@@ -0,0 +1,95 @@
+package com.mochafund.authgateway.filter;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Getter;
+import lombok.Setter;
+import org.reactivestreams.Publisher;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.OrderedGatewayFilter;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.cloud.gateway.support.HasRouteId;
+import org.springframework.core.Ordered;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpRequestDecorator;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+
+/**
+ * Keeps a route's bodies streaming with bounded memory. Request and response bodies pass through as
+ * the pooled Netty buffers the server and client hand over, one chunk at a time with the writer's
+ * demand, and {@link BodyAccounting} counts the bytes in between. A body that holds more than
+ * {@code maxBodyBuffered} at once is failed, which only happens if something on the route started
+ * aggregating it; while the route's requests together hold {@code maxBuffered}, new requests get an
+ * immediate 503 with {@code Retry-After}.
+ * <p>
+ * None of the filters on the proxy path read the body: {@code TokenRelay} and the header filters only
+ * touch headers, so they do not change this. Runs just after the concurrency limit, so a request
+ * turned away here skips token relay too, and ahead of the write-response filter, so the response it
+ * writes is the accounted one.
+ */
+@Component
+public class StreamingBodyGatewayFilterFactory extends AbstractGatewayFilterFactory<StreamingBodyGatewayFilterFactory.Config> {
+
+    private final MeterRegistry meterRegistry;
+
+    public StreamingBodyGatewayFilterFactory(MeterRegistry meterRegistry) {
+        super(Config.class);
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public GatewayFilter apply(Config config) {
+        String route = config.getRouteId() != null ? config.getRouteId() : "unknown";
+        var accounting = new BodyAccounting(meterRegistry, route,
+                config.getMaxBodyBuffered().toBytes(), config.getMaxBuffered().toBytes());
+        String retryAfter = Long.toString(Math.max(1, config.getRetryAfter().toSeconds()));
+
+        GatewayFilter filter = (exchange, chain) -> {
+            if (!accounting.tryAdmit()) {
+                var response = exchange.getResponse();
+                response.setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+                response.getHeaders().set(HttpHeaders.RETRY_AFTER, retryAfter);
+                return response.setComplete();
+            }
+            ServerHttpRequest request = new ServerHttpRequestDecorator(exchange.getRequest()) {
+                @Override
+                public Flux<DataBuffer> getBody() {
+                    return accounting.track(super.getBody(), BodyAccounting.Direction.REQUEST);
+                }
+            };
+            ServerHttpResponse response = new ServerHttpResponseDecorator(exchange.getResponse()) {
+                @Override
+                public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+                    return super.writeWith(accounting.track(body, BodyAccounting.Direction.RESPONSE));
+                }
+
+                @Override
+                public Mono<Void> writeAndFlushWith(Publisher<? extends Publisher<? extends DataBuffer>> body) {
+                    return super.writeAndFlushWith(accounting.count(body));
+                }
+            };
+            return chain.filter(exchange.mutate().request(request).response(response).build());
+        };
+        return new OrderedGatewayFilter(filter, Ordered.HIGHEST_PRECEDENCE + 1);
+    }
+
+    @Getter
+    @Setter
+    public static class Config implements HasRouteId {
+        private String routeId;
+        /** Most one body may hold in the gateway at once; 0 turns the check off. */
+        private DataSize maxBodyBuffered = DataSize.ofMegabytes(16);
+        /** Most the route's requests may hold together before new ones are refused; 0 turns it off. */
+        private DataSize maxBuffered = DataSize.ofMegabytes(256);
+        private Duration retryAfter = Duration.ofSeconds(1);
+    }
+}
@@ -0,0 +1,129 @@
+package com.mochafund.authgateway.session;
+
+import com.mochafund.authgateway.common.metrics.OutcomeTimer;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Session revocations requested asynchronously, applied to Redis in coalesced batches.
+ * <p>
+ * A realm-wide logout in Keycloak arrives as one back-channel request per session. Each request only
+ * enqueues its index value; the queue drains in batches of up to {@code max-batch} values (or whatever
+ * arrived within {@code max-delay}), drops duplicates, and revokes each index's values with a single
+ * {@link SessionRevoker} script call, one batch at a time. At most {@code capacity} values wait at once;
+ * beyond that {@link #offer} refuses so callers can push back instead of buffering without bound.
+ */
+@Slf4j
+@Component
+public class RevocationQueue {
+
+    public record Revocation(String indexName, String value) {
+    }
+
+    private final SessionRevoker revoker;
+    private final int capacity;
+    private final int maxBatch;
+    private final Duration maxDelay;
+    private final AtomicInteger pending = new AtomicInteger();
+
+    private final Counter rejected;
+    private final Counter sessionsRevoked;
+    private final DistributionSummary batchSize;
+    private final OutcomeTimer batchTimer;
+
+    private FluxSink<Revocation> sink;
+    private Disposable subscription;
+
+    public RevocationQueue(
+            SessionRevoker revoker,
+            MeterRegistry meterRegistry,
+            @Value("${mochafund.session.revocation-queue.capacity:200000}") int capacity,
+            @Value("${mochafund.session.revocation-queue.max-batch:500}") int maxBatch,
+            @Value("${mochafund.session.revocation-queue.max-delay:100ms}") Duration maxDelay
+    ) {
+        this.revoker = revoker;
+        this.capacity = capacity;
+        this.maxBatch = maxBatch;
+        this.maxDelay = maxDelay;
+
+        Gauge.builder("authgw.session.revocation-queue.depth", pending, AtomicInteger::get)
+                .description("Revocations queued or in the batch being applied")
+                .register(meterRegistry);
+        this.rejected = Counter.builder("authgw.session.revocation-queue.rejected")
+                .description("Revocations refused because the queue was full")
+                .register(meterRegistry);
+        this.sessionsRevoked = Counter.builder("authgw.session.revocation-queue.sessions.revoked")
+                .description("Sessions removed by queued revocations")
+                .register(meterRegistry);
+        this.batchSize = DistributionSummary.builder("authgw.session.revocation-queue.batch.size")
+                .description("Distinct index values per applied batch")
+                .register(meterRegistry);
+        this.batchTimer = OutcomeTimer.register(meterRegistry, "authgw.session.revocation-queue.batch.duration",
+                "Time to apply one batch of queued revocations to Redis, including retries");
+    }
+
+    @PostConstruct
+    void start() {
+        subscription = Flux.<Revocation>create(emitter -> this.sink = emitter)
+                .bufferTimeout(maxBatch, maxDelay, true)
+                .concatMap(this::apply)
+                .subscribe();
+    }
+
+    @PreDestroy
+    void stop() {
+        if (subscription != null) {
+            subscription.dispose();
+        }
+    }
+
+    /** Queues a revocation; {@code false} when the queue is full and nothing was queued. */
+    public boolean offer(Revocation revocation) {
+        if (pending.incrementAndGet() > capacity) {
+            pending.decrementAndGet();
+            rejected.increment();
+            return false;
+        }
+        sink.next(revocation);
+        return true;
+    }
+
+    private Mono<Void> apply(List<Revocation> batch) {
+        Map<String, Set<String>> byIndex = new LinkedHashMap<>();
+        for (Revocation revocation : batch) {
+            byIndex.computeIfAbsent(revocation.indexName(), name -> new LinkedHashSet<>()).add(revocation.value());
+        }
+        batchSize.record(byIndex.values().stream().mapToInt(Set::size).sum());
+
+        return batchTimer.time(Flux.fromIterable(byIndex.entrySet())
+                        .concatMap(entry -> revoker.revokeByIndex(entry.getKey(), entry.getValue()))
+                        .map(List::size)
+                        .reduce(0, Integer::sum)
+                        .retryWhen(Retry.backoff(3, Duration.ofMillis(200))))
+                .doOnNext(sessionsRevoked::increment)
+                .doOnError(ex -> log.error("Dropping {} queued revocations after retries: {}", batch.size(), ex.toString()))
+                .onErrorResume(ex -> Mono.empty())
+                .doFinally(signal -> pending.addAndGet(-batch.size()))
+                .then();
+    }
+}
@@ -0,0 +1,49 @@
+package com.mochafund.authgateway.session;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.session.DelegatingIndexResolver;
+import org.springframework.session.IndexResolver;
+import org.springframework.session.PrincipalNameIndexResolver;
+import org.springframework.session.Session;
+import org.springframework.session.SingleIndexResolver;
+
+/**
+ * Secondary session indexes next to Spring Session's principal-name index, so sessions can be
+ * revoked by identity-service user id, Keycloak subject or Keycloak session ({@code sid}) with one
+ * set lookup.
+ * <p>
+ * As with the principal name, each index is named after the session attribute it is read from;
+ * {@code SuccessHandler} sets them at login. The indexed repository writes the index entries on save
+ * and removes them along with the session, whether it is deleted or expires, and
+ * {@link SessionRevoker}'s script clears them through each session's index set.
+ */
+@Configuration
+public class SessionIndexConfig {
+
+    public static final String USER_ID_INDEX_NAME = "authgw.userId";
+    public static final String SUB_INDEX_NAME = "authgw.sub";
+    public static final String SID_INDEX_NAME = "authgw.sid";
+
+    /** Picked up by Spring Session's Redis configuration in place of the principal-only default. */
+    @Bean
+    IndexResolver<Session> sessionIndexResolver() {
+        return new DelegatingIndexResolver<>(
+                new PrincipalNameIndexResolver<>(),
+                new AttributeIndexResolver(USER_ID_INDEX_NAME),
+                new AttributeIndexResolver(SUB_INDEX_NAME),
+                new AttributeIndexResolver(SID_INDEX_NAME));
+    }
+
+    private static final class AttributeIndexResolver extends SingleIndexResolver<Session> {
+
+        AttributeIndexResolver(String indexName) {
+            super(indexName);
+        }
+
+        @Override
+        public String resolveIndexValueFor(Session session) {
+            return session.getAttribute(getIndexName());
+        }
+    }
+}
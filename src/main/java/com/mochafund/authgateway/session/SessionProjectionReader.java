@@ -0,0 +1,118 @@
+package com.mochafund.authgateway.session;
+
+import com.mochafund.authgateway.session.SessionsService.SessionPage;
+import com.mochafund.authgateway.session.SessionsService.SessionSummary;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisElementReader;
+import org.springframework.data.redis.serializer.RedisElementWriter;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.session.ReactiveFindByIndexNameSessionRepository;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads session summaries straight from Redis, one SSCAN page of the principal index at a time.
+ * <p>
+ * {@code findByPrincipalName} loads and deserializes every full session of the principal; here only
+ * the creation time, last access and max inactive interval of each session leave Redis, and a page
+ * holds roughly {@code limit} of them. Index members are written with the session serializer, so a
+ * page takes two script calls: one scans the index, and once its members are decoded into ids, one
+ * reads their fields. Same standalone-Redis assumption as {@link SessionRevoker}.
+ */
+@Component
+public class SessionProjectionReader {
+
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> SCAN_INDEX =
+            RedisScript.of(new ClassPathResource("redis/scan-index.lua"), List.class);
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> LIST_PRINCIPAL =
+            RedisScript.of(new ClassPathResource("redis/list-principal-sessions.lua"), List.class);
+
+    private static final RedisElementReader<byte[]> RAW = RedisElementReader.from(RedisSerializer.byteArray());
+    private static final RedisElementWriter<String> STRING = RedisElementWriter.from(RedisSerializer.string());
+
+    private final ReactiveStringRedisTemplate redis;
+    private final RedisSerializer<Object> valueSerializer;
+    private final String sessionKeyPrefix;
+    private final String principalIndexPrefix;
+
+    public SessionProjectionReader(
+            ReactiveStringRedisTemplate redis,
+            @Qualifier("springSessionDefaultRedisSerializer") RedisSerializer<Object> valueSerializer,
+            @Value("${spring.session.redis.namespace:spring:session}") String namespace
+    ) {
+        this.redis = redis;
+        this.valueSerializer = valueSerializer;
+        this.sessionKeyPrefix = namespace + ":sessions:";
+        this.principalIndexPrefix = sessionKeyPrefix + "index:"
+                + ReactiveFindByIndexNameSessionRepository.PRINCIPAL_NAME_INDEX_NAME + ":";
+    }
+
+    /**
+     * One page of {@code principal}'s live sessions, in index order. SSCAN treats {@code limit} as a
+     * hint, so a page may hold a few more or fewer; an empty page does not mean the scan is over,
+     * only a {@code null} {@link SessionPage#nextCursor()} does.
+     */
+    public Mono<SessionPage> page(String principal, String cursor, int limit) {
+        return redis.execute(SCAN_INDEX, List.of(principalIndexPrefix + principal),
+                        List.of(cursor, Integer.toString(limit)), STRING, uncheckedReader())
+                .next()
+                .flatMap(scan -> {
+                    String next = new String((byte[]) scan.get(0), StandardCharsets.UTF_8);
+                    List<String> args = new ArrayList<>(scan.size());
+                    args.add(sessionKeyPrefix);
+                    for (int i = 1; i < scan.size(); i++) {
+                        args.add((String) valueSerializer.deserialize((byte[]) scan.get(i)));
+                    }
+                    if (args.size() == 1) {
+                        return Mono.just(decode(next, List.of()));
+                    }
+                    return redis.execute(LIST_PRINCIPAL, List.of(), args, STRING, uncheckedReader())
+                            .next()
+                            .map(raw -> decode(next, raw));
+                })
+                .defaultIfEmpty(new SessionPage(List.of(), null));
+    }
+
+    /** Every live session of {@code principal}, fetched page by page as the subscriber requests them. */
+    public Flux<SessionSummary> stream(String principal, int pageSize) {
+        return page(principal, "0", pageSize)
+                .expand(page -> page.nextCursor() == null ? Mono.empty() : page(principal, page.nextCursor(), pageSize))
+                .concatMapIterable(SessionPage::sessions);
+    }
+
+    /** Builds a page from the field script's reply, whose ids are the plain ones it was given. */
+    SessionPage decode(String next, List<?> raw) {
+        Instant now = Instant.now();
+        List<SessionSummary> sessions = new ArrayList<>(raw.size() / 4);
+        for (int i = 0; i + 3 < raw.size(); i += 4) {
+            String id = new String((byte[]) raw.get(i), StandardCharsets.UTF_8);
+            Instant created = Instant.ofEpochMilli(((Number) valueSerializer.deserialize((byte[]) raw.get(i + 1))).longValue());
+            Instant lastAccessed = Instant.ofEpochMilli(((Number) valueSerializer.deserialize((byte[]) raw.get(i + 2))).longValue());
+            Duration maxInactive = Duration.ofSeconds(((Number) valueSerializer.deserialize((byte[]) raw.get(i + 3))).longValue());
+            // The repository keeps an expired session's hash around briefly for its expiry events
+            var summary = SessionSummary.of(id, created, lastAccessed, maxInactive);
+            if (maxInactive.isNegative() || summary.expiresAt().isAfter(now)) {
+                sessions.add(summary);
+            }
+        }
+        return new SessionPage(sessions, "0".equals(next) ? null : next);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static RedisElementReader<List> uncheckedReader() {
+        return (RedisElementReader) RAW;
+    }
+}
@@ -0,0 +1,115 @@
+package com.mochafund.authgateway.session;
+
+import com.mochafund.authgateway.session.events.SessionsRevokedEvent;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisElementReader;
+import org.springframework.data.redis.serializer.RedisElementWriter;
+import org.springframework.data.redis.serializer.RedisSerializationContext;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.session.ReactiveFindByIndexNameSessionRepository;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Removes sessions straight from Redis, bypassing the session repository.
+ * <p>
+ * {@code deleteById} loads and deserializes each session before issuing several commands for it;
+ * here the requested index sets are read in one {@code SUNION}, and all sessions under one or more
+ * index values (principal, user id or Keycloak {@code sid}), their index entries and expiration
+ * bookkeeping go in one script call regardless of how many sessions there are. Index members are
+ * written with the session serializer: each is decoded here only to learn the session id, and the
+ * script gets the member's raw bytes so it removes exactly what is stored, whichever format wrote
+ * it. This assumes a standalone (non-cluster) Redis like the indexed repository.
+ */
+@Component
+public class SessionRevoker {
+
+    private static final RedisScript<String> REVOKE_INDEXED =
+            RedisScript.of(new ClassPathResource("redis/revoke-indexed-sessions.lua"), String.class);
+
+    private static final RedisElementWriter<byte[]> RAW = RedisElementWriter.from(RedisSerializer.byteArray());
+    private static final RedisElementReader<String> STRING = RedisElementReader.from(RedisSerializer.string());
+
+    private final ReactiveStringRedisTemplate redis;
+    private final ReactiveRedisTemplate<String, byte[]> rawRedis;
+    private final RedisSerializer<Object> valueSerializer;
+    private final ApplicationEventPublisher events;
+    private final String sessionKeyPrefix;
+    private final String indexPrefix;
+    private final String expirationsKey;
+
+    public SessionRevoker(
+            ReactiveStringRedisTemplate redis,
+            @Qualifier("springSessionDefaultRedisSerializer") RedisSerializer<Object> valueSerializer,
+            ApplicationEventPublisher events,
+            @Value("${spring.session.redis.namespace:spring:session}") String namespace
+    ) {
+        this.redis = redis;
+        this.rawRedis = new ReactiveRedisTemplate<>(redis.getConnectionFactory(), RedisSerializationContext
+                .<String, byte[]>newSerializationContext(RedisSerializer.byteArray())
+                .key(RedisSerializer.string())
+                .build());
+        this.valueSerializer = valueSerializer;
+        this.events = events;
+        this.sessionKeyPrefix = namespace + ":sessions:";
+        this.indexPrefix = sessionKeyPrefix + "index:";
+        this.expirationsKey = sessionKeyPrefix + "expirations";
+    }
+
+    /** Deletes every session of {@code principal} and returns the removed session ids. */
+    public Mono<List<String>> revokeByPrincipal(String principal) {
+        return revokeByIndex(ReactiveFindByIndexNameSessionRepository.PRINCIPAL_NAME_INDEX_NAME, List.of(principal));
+    }
+
+    /** Deletes every session of the identity-service user, whatever email it was created under. */
+    public Mono<List<String>> revokeByUserId(String userId) {
+        return revokeByIndex(SessionIndexConfig.USER_ID_INDEX_NAME, List.of(userId));
+    }
+
+    /**
+     * Deletes every session indexed under any of {@code values} in one script call. Callers batching
+     * revocations should bound the number of values, since Redis runs the whole script atomically.
+     */
+    public Mono<List<String>> revokeByIndex(String indexName, Collection<String> values) {
+        String prefix = indexPrefix + indexName + ":";
+        List<String> requested = values.stream().distinct().map(value -> prefix + value).toList();
+        if (requested.isEmpty()) {
+            return Mono.just(List.of());
+        }
+        return rawRedis.opsForSet().union(requested)
+                .collectList()
+                .flatMap(members -> members.isEmpty() ? Mono.just(List.<String>of()) : revoke(requested, members))
+                .doOnNext(ids -> {
+                    if (!ids.isEmpty()) {
+                        events.publishEvent(new SessionsRevokedEvent(ids));
+                    }
+                });
+    }
+
+    private Mono<List<String>> revoke(List<String> indexKeys, List<byte[]> members) {
+        List<byte[]> args = new ArrayList<>(2 + members.size() * 2);
+        args.add(sessionKeyPrefix.getBytes(StandardCharsets.UTF_8));
+        args.add(expirationsKey.getBytes(StandardCharsets.UTF_8));
+        for (byte[] member : members) {
+            if (valueSerializer.deserialize(member) instanceof String id) {
+                args.add(id.getBytes(StandardCharsets.UTF_8));
+                args.add(member);
+            }
+        }
+        return redis.execute(REVOKE_INDEXED, indexKeys, args, RAW, STRING)
+                .next()
+                .map(joined -> joined.isEmpty() ? List.<String>of() : List.of(joined.split(",")))
+                .defaultIfEmpty(List.of());
+    }
+}
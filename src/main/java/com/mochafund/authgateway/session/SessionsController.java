@@ -1,10 +1,15 @@
 package com.mochafund.authgateway.session;
 
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.util.List;
@@ -20,5 +25,36 @@ public class SessionsController {
     public Mono<List<SessionsService.SessionSummary>> getSessions(Authentication auth) {
         return sessions.listByPrincipal(auth.getName());
     }
-}
 
+    /** {@code GET /sessions?limit=100} for the first page, then {@code &cursor=<nextCursor>} until it is null. */
+    @GetMapping(params = "limit")
+    public Mono<SessionsService.SessionPage> getSessionPage(
+            Authentication auth,
+            @RequestParam int limit,
+            @RequestParam(required = false) String cursor
+    ) {
+        if (cursor != null && !isScanCursor(cursor)) {
+            return Mono.error(new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor"));
+        }
+        return sessions.pageByPrincipal(auth.getName(), cursor, limit);
+    }
+
+    @GetMapping(value = "/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<SessionsService.SessionSummary> streamSessions(Authentication auth) {
+        return sessions.streamByPrincipal(auth.getName());
+    }
+
+    /** Cursors are SSCAN cursors handed out by a previous page: unsigned decimal integers. */
+    private static boolean isScanCursor(String cursor) {
+        if (cursor.isEmpty() || cursor.length() > 20) {
+            return false;
+        }
+        for (int i = 0; i < cursor.length(); i++) {
+            char c = cursor.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+}
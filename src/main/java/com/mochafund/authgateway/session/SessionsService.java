@@ -1,61 +1,95 @@
 package com.mochafund.authgateway.session;
 
-import lombok.RequiredArgsConstructor;
+import com.mochafund.authgateway.common.metrics.OutcomeTimer;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.session.ReactiveSessionRepository;
-import org.springframework.session.ReactiveFindByIndexNameSessionRepository;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.session.Session;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.time.Duration;
 import java.time.Instant;
 import java.util.Comparator;
 import java.util.List;
-import java.util.Map;
 
 @Slf4j
 @Service
-@RequiredArgsConstructor
 public class SessionsService {
 
-    private final ReactiveSessionRepository<? extends Session> sessionRepo;
+    private final SessionProjectionReader projections;
+    private final SessionRevoker revoker;
+    private final int pageSize;
+    private final int maxLimit;
+    private final OutcomeTimer listTimer;
+    private final OutcomeTimer pageTimer;
+    private final OutcomeTimer streamTimer;
+    private final OutcomeTimer deleteTimer;
+    private final OutcomeTimer deleteByUserIdTimer;
 
-    private ReactiveFindByIndexNameSessionRepository<? extends Session> indexed() {
-        if (sessionRepo instanceof ReactiveFindByIndexNameSessionRepository<?> idx) {
-            return idx;
-        }
-        throw new IllegalStateException(
-                "Reactive Redis session repo is NOT indexed. Set `spring.session.redis.repository-type=indexed`.");
+    public SessionsService(
+            SessionProjectionReader projections,
+            SessionRevoker revoker,
+            MeterRegistry meterRegistry,
+            @Value("${mochafund.session.listing.page-size:100}") int pageSize,
+            @Value("${mochafund.session.listing.max-limit:500}") int maxLimit
+    ) {
+        this.projections = projections;
+        this.revoker = revoker;
+        this.pageSize = pageSize;
+        this.maxLimit = maxLimit;
+        this.listTimer = OutcomeTimer.register(meterRegistry, "authgw.sessions.operation",
+                "Session management by principal", "operation", "list");
+        this.pageTimer = OutcomeTimer.register(meterRegistry, "authgw.sessions.operation",
+                "Session management by principal", "operation", "page");
+        this.streamTimer = OutcomeTimer.register(meterRegistry, "authgw.sessions.operation",
+                "Session management by principal", "operation", "stream");
+        this.deleteTimer = OutcomeTimer.register(meterRegistry, "authgw.sessions.operation",
+                "Session management by principal", "operation", "delete");
+        this.deleteByUserIdTimer = OutcomeTimer.register(meterRegistry, "authgw.sessions.operation",
+                "Session management by principal", "operation", "delete-by-user-id");
     }
 
+    /** All sessions, most recently used first. Sorting needs them all in hand; prefer the page or stream for large principals. */
     public Mono<List<SessionSummary>> listByPrincipal(String principal) {
-        return indexed().findByPrincipalName(principal)
-                .map(Map::values)
-                .map(values -> values.stream()
-                        .map(SessionSummary::from)
-                        .sorted(Comparator.comparing(SessionSummary::lastAccessed).reversed())
-                        .toList());
+        return listTimer.time(projections.stream(principal, pageSize)
+                .collectSortedList(Comparator.comparing(SessionSummary::lastAccessed).reversed()));
+    }
+
+    /** One page in index order; pass the previous page's {@code nextCursor}, or {@code null} to start. */
+    public Mono<SessionPage> pageByPrincipal(String principal, String cursor, int limit) {
+        return pageTimer.time(projections.page(principal, cursor == null ? "0" : cursor, Math.clamp(limit, 1, maxLimit)));
+    }
+
+    /** All sessions in index order, holding at most one page in memory. */
+    public Flux<SessionSummary> streamByPrincipal(String principal) {
+        return streamTimer.time(projections.stream(principal, pageSize));
     }
 
     public Mono<Long> deleteAllByPrincipal(String principal) {
-        return indexed().findByPrincipalName(principal)
-                .flatMapMany(map -> {
-                    var sessionIds = map.keySet();
-                    return Flux.fromIterable(sessionIds)
-                            .flatMap(sessionId ->
-                                sessionRepo.deleteById(sessionId)
-                                    .doOnSuccess(v -> log.debug("Deleted session: {}", sessionId))
-                                    .thenReturn(1L)
-                            );
-                })
-                .reduce(0L, Long::sum);
+        return deleteTimer.time(revoker.revokeByPrincipal(principal))
+                .doOnNext(ids -> log.debug("Deleted sessions: {}", ids))
+                .map(ids -> (long) ids.size());
+    }
+
+    public Mono<Long> deleteAllByUserId(String userId) {
+        return deleteByUserIdTimer.time(revoker.revokeByUserId(userId))
+                .doOnNext(ids -> log.debug("Deleted sessions: {}", ids))
+                .map(ids -> (long) ids.size());
     }
 
     public record SessionSummary(String id, Instant created, Instant lastAccessed, Instant expiresAt) {
         static SessionSummary from(Session s) {
-            var expiry = s.getLastAccessedTime().plus(s.getMaxInactiveInterval());
-            return new SessionSummary(s.getId(), s.getCreationTime(), s.getLastAccessedTime(), expiry);
+            return of(s.getId(), s.getCreationTime(), s.getLastAccessedTime(), s.getMaxInactiveInterval());
+        }
+
+        static SessionSummary of(String id, Instant created, Instant lastAccessed, Duration maxInactiveInterval) {
+            return new SessionSummary(id, created, lastAccessed, lastAccessed.plus(maxInactiveInterval));
         }
     }
-}
\ No newline at end of file
+
+    /** {@code nextCursor} is {@code null} once the principal's sessions are exhausted. */
+    public record SessionPage(List<SessionSummary> sessions, String nextCursor) {
+    }
+}
@@ -0,0 +1,64 @@
+package com.mochafund.authgateway.session.cache;
+
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.oauth2.client.authentication.OAuth2AuthenticationToken;
+import org.springframework.security.oauth2.core.oidc.user.OidcUser;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * Decides whether re-setting a session attribute would store anything new. Values that cannot be
+ * mutated in place are compared by value. A security context is compared only when it is a different
+ * instance, since the one the caller already holds may have been changed through that reference; a
+ * new context for the same login (same principal, authorities and ID token issue time) is unchanged.
+ * Anything else (maps, ...) always counts as a change.
+ */
+final class AttributeValues {
+
+    private AttributeValues() {
+    }
+
+    static boolean unchanged(Object current, Object next) {
+        if (current == null) {
+            return false;
+        }
+        if (isImmutable(next)) {
+            return next.equals(current);
+        }
+        if (current != next && current instanceof SecurityContext a && next instanceof SecurityContext b) {
+            return sameLogin(a.getAuthentication(), b.getAuthentication());
+        }
+        return false;
+    }
+
+    private static boolean isImmutable(Object value) {
+        return value instanceof String
+                || value instanceof Long
+                || value instanceof Integer
+                || value instanceof Boolean
+                || value instanceof Double
+                || value instanceof Instant
+                || value instanceof Duration
+                || value instanceof UUID
+                || value instanceof Enum<?>;
+    }
+
+    private static boolean sameLogin(Authentication a, Authentication b) {
+        if (!(a instanceof OAuth2AuthenticationToken x) || !(b instanceof OAuth2AuthenticationToken y)
+                || !(x.getPrincipal() instanceof OidcUser xUser) || !(y.getPrincipal() instanceof OidcUser yUser)) {
+            return false;
+        }
+        Instant issuedAt = xUser.getIdToken().getIssuedAt();
+        return issuedAt != null
+                && issuedAt.equals(yUser.getIdToken().getIssuedAt())
+                && x.getAuthorizedClientRegistrationId().equals(y.getAuthorizedClientRegistrationId())
+                && Objects.equals(x.getName(), y.getName())
+                && AuthorityUtils.authorityListToSet(x.getAuthorities())
+                        .equals(AuthorityUtils.authorityListToSet(y.getAuthorities()));
+    }
+}
@@ -0,0 +1,262 @@
+package com.mochafund.authgateway.session.cache;
+
+import com.mochafund.authgateway.common.metrics.OutcomeTimer;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.data.redis.serializer.SerializationException;
+import org.springframework.session.MapSession;
+import org.springframework.session.ReactiveFindByIndexNameSessionRepository;
+import org.springframework.session.ReactiveSessionRepository;
+import org.springframework.session.Session;
+import org.springframework.session.data.redis.ReactiveRedisIndexedSessionRepository;
+import org.springframework.session.data.redis.ReactiveRedisIndexedSessionRepository.RedisSession;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Decorates the indexed Redis session repository with {@link SessionNearCache} (when enabled) and
+ * throttles last-access writes.
+ * <p>
+ * Hits rebuild a {@link RedisSession} from the cached snapshot, so saves still only write the
+ * delta to Redis. Sessions whose attributes or id changed are invalidated cluster-wide on save.
+ * <p>
+ * A save that changes nothing but {@code lastAccessedTime} is skipped until the persisted value is
+ * at least {@code touchGranularity} old. The session then expires up to that much earlier than it
+ * would with per-request touches, which is noise against a multi-day timeout.
+ * <p>
+ * A session whose attributes can no longer be decoded, say one naming a client registration the
+ * provider no longer has, is treated as absent, so the user logs in again instead of getting an error.
+ */
+@Slf4j
+public class CachingSessionRepository implements
+        ReactiveSessionRepository<CachingSessionRepository.CachedSession>,
+        ReactiveFindByIndexNameSessionRepository<CachingSessionRepository.CachedSession>,
+        DisposableBean {
+
+    private final ReactiveRedisIndexedSessionRepository delegate;
+    /** {@code null} when the near cache is disabled. */
+    private final SessionNearCache cache;
+    private final Duration touchGranularity;
+    private final Counter writes;
+    private final Counter skippedWrites;
+    private final OutcomeTimer redisLoad;
+    private final OutcomeTimer redisSave;
+    private final OutcomeTimer redisDelete;
+
+    public CachingSessionRepository(
+            ReactiveRedisIndexedSessionRepository delegate,
+            SessionNearCache cache,
+            Duration touchGranularity,
+            MeterRegistry meterRegistry
+    ) {
+        this.delegate = delegate;
+        this.cache = cache;
+        this.touchGranularity = touchGranularity;
+        this.writes = writeCounter(meterRegistry, "written");
+        this.skippedWrites = writeCounter(meterRegistry, "skipped");
+        this.redisLoad = redisTimer(meterRegistry, "load");
+        this.redisSave = redisTimer(meterRegistry, "save");
+        this.redisDelete = redisTimer(meterRegistry, "delete");
+    }
+
+    private static Counter writeCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("authgw.session.writes")
+                .description("Session saves written to Redis or skipped because only lastAccessedTime moved")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    private static OutcomeTimer redisTimer(MeterRegistry meterRegistry, String operation) {
+        return OutcomeTimer.register(meterRegistry, "authgw.session.redis",
+                "Session repository round trips to Redis (near-cache hits excluded)", "operation", operation);
+    }
+
+    @Override
+    public Mono<CachedSession> createSession() {
+        return delegate.createSession().map(session -> new CachedSession(session, true));
+    }
+
+    @Override
+    public Mono<Void> save(CachedSession session) {
+        if (canSkipWrite(session)) {
+            skippedWrites.increment();
+            return Mono.empty();
+        }
+        writes.increment();
+        return redisSave.time(delegate.save(session.delegate))
+                .then(Mono.fromRunnable(() -> {
+                    if (cache != null) {
+                        if (!session.originalId.equals(session.getId())) {
+                            cache.invalidate(session.originalId);
+                        }
+                        if (session.dirty) {
+                            cache.invalidate(session.getId());
+                        }
+                        cache.put(session);
+                    }
+                    session.markSaved();
+                }));
+    }
+
+    private boolean canSkipWrite(CachedSession session) {
+        if (session.isNew || session.dirty || touchGranularity.isZero()) {
+            return false;
+        }
+        Instant persisted = session.persistedLastAccessedTime;
+        return persisted != null
+                && Duration.between(persisted, session.getLastAccessedTime()).compareTo(touchGranularity) < 0;
+    }
+
+    @Override
+    public Mono<CachedSession> findById(String id) {
+        return Mono.defer(() -> {
+            MapSession snapshot = cache != null ? cache.get(id) : null;
+            if (snapshot != null) {
+                return Mono.just(new CachedSession(delegate.new RedisSession(snapshot, false), false));
+            }
+            return redisLoad.time(delegate.findById(id))
+                    .doOnNext(session -> {
+                        if (cache != null) {
+                            cache.put(session);
+                        }
+                    })
+                    .map(session -> new CachedSession(session, false))
+                    .onErrorResume(SerializationException.class, ex -> {
+                        log.warn("Ignoring session that cannot be decoded: {}", ex.getMessage());
+                        return Mono.empty();
+                    });
+        });
+    }
+
+    @Override
+    public Mono<Void> deleteById(String id) {
+        return redisDelete.time(delegate.deleteById(id))
+                .doFinally(signal -> {
+                    if (cache != null) {
+                        cache.invalidate(id);
+                    }
+                });
+    }
+
+    @Override
+    public Mono<Map<String, CachedSession>> findByIndexNameAndIndexValue(String indexName, String indexValue) {
+        return delegate.findByIndexNameAndIndexValue(indexName, indexValue)
+                .map(sessions -> {
+                    Map<String, CachedSession> wrapped = new LinkedHashMap<>(sessions.size());
+                    sessions.forEach((id, session) -> wrapped.put(id, new CachedSession(session, false)));
+                    return wrapped;
+                });
+    }
+
+    @Override
+    public void destroy() {
+        delegate.destroy();
+    }
+
+    /**
+     * Thin wrapper that remembers the id and last-access time the session was loaded with and
+     * whether anything besides the last-access time changed, so {@link #save(CachedSession)} knows
+     * what to invalidate on other nodes and whether the write can be skipped.
+     */
+    public static final class CachedSession implements Session {
+
+        private final RedisSession delegate;
+        private String originalId;
+        private Instant persistedLastAccessedTime;
+        private boolean isNew;
+        private boolean dirty;
+
+        CachedSession(RedisSession delegate, boolean isNew) {
+            this.delegate = delegate;
+            this.isNew = isNew;
+            this.originalId = delegate.getId();
+            this.persistedLastAccessedTime = delegate.getLastAccessedTime();
+        }
+
+        private void markSaved() {
+            this.originalId = delegate.getId();
+            this.persistedLastAccessedTime = delegate.getLastAccessedTime();
+            this.isNew = false;
+            this.dirty = false;
+        }
+
+        @Override
+        public String getId() {
+            return delegate.getId();
+        }
+
+        @Override
+        public String changeSessionId() {
+            dirty = true;
+            return delegate.changeSessionId();
+        }
+
+        @Override
+        public <T> T getAttribute(String attributeName) {
+            return delegate.getAttribute(attributeName);
+        }
+
+        @Override
+        public Set<String> getAttributeNames() {
+            return delegate.getAttributeNames();
+        }
+
+        @Override
+        public void setAttribute(String attributeName, Object attributeValue) {
+            if (attributeValue != null && AttributeValues.unchanged(delegate.getAttribute(attributeName), attributeValue)) {
+                return;
+            }
+            dirty = true;
+            delegate.setAttribute(attributeName, attributeValue);
+        }
+
+        @Override
+        public void removeAttribute(String attributeName) {
+            if (delegate.getAttribute(attributeName) == null) {
+                return;
+            }
+            dirty = true;
+            delegate.removeAttribute(attributeName);
+        }
+
+        @Override
+        public Instant getCreationTime() {
+            return delegate.getCreationTime();
+        }
+
+        @Override
+        public void setLastAccessedTime(Instant lastAccessedTime) {
+            delegate.setLastAccessedTime(lastAccessedTime);
+        }
+
+        @Override
+        public Instant getLastAccessedTime() {
+            return delegate.getLastAccessedTime();
+        }
+
+        @Override
+        public void setMaxInactiveInterval(Duration interval) {
+            if (!interval.equals(delegate.getMaxInactiveInterval())) {
+                dirty = true;
+            }
+            delegate.setMaxInactiveInterval(interval);
+        }
+
+        @Override
+        public Duration getMaxInactiveInterval() {
+            return delegate.getMaxInactiveInterval();
+        }
+
+        @Override
+        public boolean isExpired() {
+            return delegate.isExpired();
+        }
+    }
+}
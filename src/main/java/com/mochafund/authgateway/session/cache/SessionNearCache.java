@@ -0,0 +1,142 @@
+package com.mochafund.authgateway.session.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.mochafund.authgateway.session.events.SessionsRevokedEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.session.MapSession;
+import org.springframework.session.Session;
+import org.springframework.session.events.SessionDestroyedEvent;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Node-local L1 cache of decoded sessions sitting in front of the Redis session store.
+ * <p>
+ * Entries are immutable {@link MapSession} snapshots; callers always receive a copy. Removals and
+ * attribute writes are broadcast on a Redis pub/sub channel so every gateway node drops its copy,
+ * and Spring Session's own deleted/expired events evict locally as a second line of defence.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "mochafund.session.near-cache", name = "enabled", havingValue = "true")
+public class SessionNearCache {
+
+    private static final String SEPARATOR = "|";
+    private static final String ID_DELIMITER = ",";
+
+    private final ReactiveStringRedisTemplate redis;
+    private final Cache<String, MapSession> cache;
+    private final String channel;
+    private final String nodeId = UUID.randomUUID().toString();
+    private final Counter remoteInvalidations;
+
+    private Disposable subscription;
+
+    public SessionNearCache(
+            ReactiveStringRedisTemplate redis,
+            MeterRegistry meterRegistry,
+            @Value("${mochafund.session.near-cache.max-size:10000}") long maxSize,
+            @Value("${mochafund.session.near-cache.ttl:30s}") Duration ttl,
+            @Value("${spring.session.redis.namespace:spring:session}") String namespace
+    ) {
+        this.redis = redis;
+        this.channel = namespace + ":near-cache:invalidate";
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        this.remoteInvalidations = Counter.builder("authgw.session.near-cache.invalidations")
+                .description("Invalidations received from other gateway nodes")
+                .register(meterRegistry);
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "authgw.session.near-cache");
+    }
+
+    @PostConstruct
+    void subscribe() {
+        subscription = redis.listenToChannel(channel)
+                .doOnNext(message -> onInvalidation(message.getMessage()))
+                .onErrorContinue((ex, msg) -> log.warn("Failed to process near-cache invalidation: {}", ex.toString()))
+                .subscribe();
+    }
+
+    @PreDestroy
+    void unsubscribe() {
+        if (subscription != null) {
+            subscription.dispose();
+        }
+    }
+
+    /** Returns a private copy of the cached session, or {@code null} on a miss or an expired snapshot. */
+    public MapSession get(String sessionId) {
+        MapSession snapshot = cache.getIfPresent(sessionId);
+        if (snapshot == null) {
+            return null;
+        }
+        if (snapshot.isExpired()) {
+            cache.invalidate(sessionId);
+            return null;
+        }
+        return new MapSession(snapshot);
+    }
+
+    public void put(Session session) {
+        cache.put(session.getId(), new MapSession(session));
+    }
+
+    /** Drops the entry on this node only. */
+    public void evict(String sessionId) {
+        cache.invalidate(sessionId);
+    }
+
+    /** Drops the entry on this node and tells every other node to do the same. */
+    public void invalidate(String sessionId) {
+        invalidateAll(List.of(sessionId));
+    }
+
+    /** Like {@link #invalidate(String)} for many sessions, broadcast as a single message. */
+    public void invalidateAll(Collection<String> sessionIds) {
+        cache.invalidateAll(sessionIds);
+        redis.convertAndSend(channel, nodeId + SEPARATOR + String.join(ID_DELIMITER, sessionIds))
+                .doOnError(ex -> log.warn("Failed to broadcast near-cache invalidation for {}: {}", sessionIds, ex.toString()))
+                .onErrorResume(ex -> Mono.empty())
+                .subscribe();
+    }
+
+    @EventListener
+    public void onSessionDestroyed(SessionDestroyedEvent event) {
+        cache.invalidate(event.getSessionId());
+    }
+
+    @EventListener
+    public void onSessionsRevoked(SessionsRevokedEvent event) {
+        invalidateAll(event.sessionIds());
+    }
+
+    private void onInvalidation(String message) {
+        int idx = message.indexOf(SEPARATOR);
+        if (idx < 0 || nodeId.equals(message.substring(0, idx))) {
+            return;
+        }
+        String[] sessionIds = message.substring(idx + 1).split(ID_DELIMITER);
+        cache.invalidateAll(Arrays.asList(sessionIds));
+        remoteInvalidations.increment(sessionIds.length);
+    }
+}
@@ -0,0 +1,38 @@
+package com.mochafund.authgateway.session.cache;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.session.data.redis.ReactiveRedisIndexedSessionRepository;
+
+import java.time.Duration;
+
+/**
+ * Wraps the auto-configured Redis session repository instead of declaring a new
+ * {@code ReactiveSessionRepository} bean, which would switch off Boot's session auto-configuration.
+ * The wrapper is always installed for touch throttling; the near cache is used only when enabled.
+ */
+@Configuration
+public class SessionRepositoryConfig {
+
+    @Bean
+    static BeanPostProcessor cachingSessionRepositoryPostProcessor(
+            ObjectProvider<SessionNearCache> nearCache,
+            ObjectProvider<MeterRegistry> meterRegistry,
+            @Value("${mochafund.session.touch-granularity:5m}") Duration touchGranularity
+    ) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof ReactiveRedisIndexedSessionRepository repository) {
+                    return new CachingSessionRepository(
+                            repository, nearCache.getIfAvailable(), touchGranularity, meterRegistry.getObject());
+                }
+                return bean;
+            }
+        };
+    }
+}
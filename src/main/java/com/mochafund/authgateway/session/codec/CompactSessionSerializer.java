@@ -0,0 +1,517 @@
+package com.mochafund.authgateway.session.codec;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextImpl;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.security.oauth2.client.authentication.OAuth2AuthenticationToken;
+import org.springframework.security.oauth2.client.registration.ClientRegistration;
+import org.springframework.security.oauth2.core.OAuth2AccessToken;
+import org.springframework.security.oauth2.core.OAuth2RefreshToken;
+import org.springframework.security.oauth2.core.oidc.OidcIdToken;
+import org.springframework.security.oauth2.core.oidc.OidcUserInfo;
+import org.springframework.security.oauth2.core.oidc.user.DefaultOidcUser;
+import org.springframework.security.oauth2.core.oidc.user.OidcUserAuthority;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Versioned binary serializer for Spring Session attribute values.
+ * <p>
+ * Handles what the gateway actually stores: session bookkeeping scalars, the
+ * {@code SecurityContext} holding an {@link OAuth2AuthenticationToken} with a {@link DefaultOidcUser},
+ * and {@link OAuth2AuthorizedClient}s. Client registrations are written by id and resolved on read.
+ * Anything else is written with JDK serialization, and JDK-serialized values already in Redis are
+ * still readable, so switching formats needs no mass logout.
+ *
+ * <pre>
+ * value   := MAGIC VERSION item
+ * item    := tag payload        (see the T_* constants)
+ * </pre>
+ */
+@Slf4j
+public class CompactSessionSerializer implements RedisSerializer<Object> {
+
+    /** Which format new values are written in; reads always accept both. */
+    public enum WriteFormat { COMPACT, JDK }
+
+    static final byte MAGIC = (byte) 0xB7;
+    static final byte VERSION = 1;
+
+    private static final byte JDK_STREAM_MAGIC_0 = (byte) 0xAC;
+    private static final byte JDK_STREAM_MAGIC_1 = (byte) 0xED;
+
+    private static final byte T_NULL = 0;
+    private static final byte T_STRING = 1;
+    private static final byte T_LONG = 2;
+    private static final byte T_INT = 3;
+    private static final byte T_BOOLEAN = 4;
+    private static final byte T_DOUBLE = 5;
+    private static final byte T_INSTANT = 6;
+    private static final byte T_URL = 7;
+    private static final byte T_LIST = 8;
+    private static final byte T_MAP = 9;
+    private static final byte T_SECURITY_CONTEXT = 20;
+    private static final byte T_AUTHORIZED_CLIENT = 21;
+
+    private static final byte A_SIMPLE = 1;
+    private static final byte A_OIDC_USER = 2;
+
+    private final Function<String, ClientRegistration> registrations;
+    private final WriteFormat writeFormat;
+    private final JdkSerializationRedisSerializer jdk;
+
+    private final Counter jdkFallbacks;
+    private final DistributionSummary compactBytes;
+    private final DistributionSummary jdkBytes;
+
+    public CompactSessionSerializer(
+            Function<String, ClientRegistration> registrations,
+            WriteFormat writeFormat,
+            ClassLoader classLoader,
+            MeterRegistry meterRegistry) {
+        this.registrations = registrations;
+        this.writeFormat = writeFormat;
+        this.jdk = new JdkSerializationRedisSerializer(classLoader);
+
+        this.jdkFallbacks = Counter.builder("authgw.session.codec.jdk-fallbacks")
+                .description("Session attribute values written with JDK serialization because the compact codec does not support them")
+                .register(meterRegistry);
+        this.compactBytes = sizeSummary(meterRegistry, "compact");
+        this.jdkBytes = sizeSummary(meterRegistry, "jdk");
+    }
+
+    private static DistributionSummary sizeSummary(MeterRegistry registry, String format) {
+        return DistributionSummary.builder("authgw.session.codec.bytes")
+                .description("Encoded size of session attribute values")
+                .baseUnit("bytes")
+                .tag("format", format)
+                .register(registry);
+    }
+
+    @Override
+    public byte[] serialize(Object value) throws SerializationException {
+        if (value == null) {
+            return new byte[0];
+        }
+        if (writeFormat == WriteFormat.COMPACT) {
+            try {
+                byte[] bytes = encode(value);
+                compactBytes.record(bytes.length);
+                return bytes;
+            } catch (UnsupportedValueException e) {
+                jdkFallbacks.increment();
+                log.debug("Falling back to JDK serialization for {}: {}", value.getClass().getName(), e.getMessage());
+            }
+        }
+        byte[] bytes = jdk.serialize(value);
+        jdkBytes.record(bytes.length);
+        return bytes;
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        if (bytes.length > 1 && bytes[0] == JDK_STREAM_MAGIC_0 && bytes[1] == JDK_STREAM_MAGIC_1) {
+            return jdk.deserialize(bytes);
+        }
+        if (bytes[0] != MAGIC) {
+            throw new SerializationException("Unrecognized session attribute encoding");
+        }
+        try (var in = new DataInputStream(new ByteArrayInputStream(bytes, 1, bytes.length - 1))) {
+            byte version = in.readByte();
+            if (version != VERSION) {
+                throw new SerializationException("Unsupported session codec version " + version);
+            }
+            return readItem(in);
+        } catch (IOException e) {
+            throw new SerializationException("Failed to decode session attribute", e);
+        } catch (UnsupportedValueException e) {
+            // An unknown client registration on read; the session cannot be restored
+            throw new SerializationException("Failed to decode session attribute: " + e.getMessage(), e);
+        }
+    }
+
+    byte[] encode(Object value) {
+        var buffer = new ByteArrayOutputStream(256);
+        try (var out = new DataOutputStream(buffer)) {
+            out.writeByte(MAGIC);
+            out.writeByte(VERSION);
+            writeItem(out, value);
+        } catch (IOException e) {
+            throw new SerializationException("Failed to encode session attribute", e);
+        }
+        return buffer.toByteArray();
+    }
+
+    // ---- items -------------------------------------------------------------------------------
+
+    private void writeItem(DataOutputStream out, Object value) throws IOException {
+        switch (value) {
+            case null -> out.writeByte(T_NULL);
+            case String s -> {
+                out.writeByte(T_STRING);
+                writeString(out, s);
+            }
+            case Long l -> {
+                out.writeByte(T_LONG);
+                out.writeLong(l);
+            }
+            case Integer i -> {
+                out.writeByte(T_INT);
+                out.writeInt(i);
+            }
+            case Boolean b -> {
+                out.writeByte(T_BOOLEAN);
+                out.writeBoolean(b);
+            }
+            case Double d -> {
+                out.writeByte(T_DOUBLE);
+                out.writeDouble(d);
+            }
+            case Instant instant -> {
+                out.writeByte(T_INSTANT);
+                writeInstant(out, instant);
+            }
+            case URL url -> {
+                out.writeByte(T_URL);
+                writeString(out, url.toString());
+            }
+            case List<?> list -> {
+                out.writeByte(T_LIST);
+                writeVarInt(out, list.size());
+                for (Object element : list) {
+                    writeItem(out, element);
+                }
+            }
+            case Map<?, ?> map -> {
+                out.writeByte(T_MAP);
+                writeMap(out, map);
+            }
+            case SecurityContextImpl context -> {
+                out.writeByte(T_SECURITY_CONTEXT);
+                writeSecurityContext(out, context);
+            }
+            case OAuth2AuthorizedClient client -> {
+                out.writeByte(T_AUTHORIZED_CLIENT);
+                writeAuthorizedClient(out, client);
+            }
+            default -> throw new UnsupportedValueException(value.getClass().getName());
+        }
+    }
+
+    private Object readItem(DataInputStream in) throws IOException {
+        byte tag = in.readByte();
+        return switch (tag) {
+            case T_NULL -> null;
+            case T_STRING -> readString(in);
+            case T_LONG -> in.readLong();
+            case T_INT -> in.readInt();
+            case T_BOOLEAN -> in.readBoolean();
+            case T_DOUBLE -> in.readDouble();
+            case T_INSTANT -> readInstant(in);
+            case T_URL -> URI.create(readString(in)).toURL();
+            case T_LIST -> {
+                int size = readVarInt(in);
+                List<Object> list = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    list.add(readItem(in));
+                }
+                yield list;
+            }
+            case T_MAP -> readMap(in);
+            case T_SECURITY_CONTEXT -> readSecurityContext(in);
+            case T_AUTHORIZED_CLIENT -> readAuthorizedClient(in);
+            default -> throw new SerializationException("Unknown session codec tag " + tag);
+        };
+    }
+
+    private void writeMap(DataOutputStream out, Map<?, ?> map) throws IOException {
+        writeVarInt(out, map.size());
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            if (!(entry.getKey() instanceof String key)) {
+                throw new UnsupportedValueException("map with non-string keys");
+            }
+            writeString(out, key);
+            writeItem(out, entry.getValue());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <V> Map<String, V> readMap(DataInputStream in) throws IOException {
+        int size = readVarInt(in);
+        Map<String, V> map = new LinkedHashMap<>(Math.max(4, size * 4 / 3 + 1));
+        for (int i = 0; i < size; i++) {
+            map.put(readString(in), (V) readItem(in));
+        }
+        return map;
+    }
+
+    // ---- security context --------------------------------------------------------------------
+
+    private void writeSecurityContext(DataOutputStream out, SecurityContextImpl context) throws IOException {
+        if (!(context.getAuthentication() instanceof OAuth2AuthenticationToken token)
+                || token.getDetails() != null
+                || token.getPrincipal().getClass() != DefaultOidcUser.class) {
+            throw new UnsupportedValueException("security context without an OIDC login");
+        }
+        DefaultOidcUser user = (DefaultOidcUser) token.getPrincipal();
+        String registrationId = token.getAuthorizedClientRegistrationId();
+
+        writeString(out, registrationId);
+        writeString(out, nameAttributeKey(registrationId));
+        writeIdToken(out, user.getIdToken());
+        writeNullableMap(out, user.getUserInfo() != null ? user.getUserInfo().getClaims() : null);
+        writeAuthorities(out, user.getAuthorities(), user);
+
+        boolean sameAuthorities = Objects.equals(Set.copyOf(token.getAuthorities()), Set.copyOf(user.getAuthorities()));
+        out.writeBoolean(sameAuthorities);
+        if (!sameAuthorities) {
+            writeAuthorities(out, token.getAuthorities(), user);
+        }
+    }
+
+    private SecurityContextImpl readSecurityContext(DataInputStream in) throws IOException {
+        String registrationId = readString(in);
+        String nameAttributeKey = readString(in);
+        OidcIdToken idToken = readIdToken(in);
+        Map<String, Object> userInfoClaims = readNullableMap(in);
+        OidcUserInfo userInfo = userInfoClaims != null ? new OidcUserInfo(userInfoClaims) : null;
+
+        List<GrantedAuthority> userAuthorities = readAuthorities(in, idToken, userInfo);
+        List<GrantedAuthority> tokenAuthorities = in.readBoolean() ? userAuthorities : readAuthorities(in, idToken, userInfo);
+
+        var user = new DefaultOidcUser(userAuthorities, idToken, userInfo, nameAttributeKey);
+        return new SecurityContextImpl(new OAuth2AuthenticationToken(user, tokenAuthorities, registrationId));
+    }
+
+    private String nameAttributeKey(String registrationId) {
+        ClientRegistration registration = registration(registrationId);
+        String key = registration.getProviderDetails().getUserInfoEndpoint().getUserNameAttributeName();
+        return key != null ? key : "sub";
+    }
+
+    private void writeIdToken(DataOutputStream out, OidcIdToken idToken) throws IOException {
+        writeString(out, idToken.getTokenValue());
+        writeNullableInstant(out, idToken.getIssuedAt());
+        writeNullableInstant(out, idToken.getExpiresAt());
+        writeMap(out, idToken.getClaims());
+    }
+
+    private OidcIdToken readIdToken(DataInputStream in) throws IOException {
+        String value = readString(in);
+        Instant issuedAt = readNullableInstant(in);
+        Instant expiresAt = readNullableInstant(in);
+        return new OidcIdToken(value, issuedAt, expiresAt, readMap(in));
+    }
+
+    private void writeAuthorities(DataOutputStream out, Collection<? extends GrantedAuthority> authorities, DefaultOidcUser user)
+            throws IOException {
+        writeVarInt(out, authorities.size());
+        for (GrantedAuthority authority : authorities) {
+            if (authority.getClass() == SimpleGrantedAuthority.class) {
+                out.writeByte(A_SIMPLE);
+                writeString(out, authority.getAuthority());
+            } else if (authority.getClass() == OidcUserAuthority.class
+                    && ((OidcUserAuthority) authority).getIdToken().equals(user.getIdToken())
+                    && Objects.equals(((OidcUserAuthority) authority).getUserInfo(), user.getUserInfo())) {
+                out.writeByte(A_OIDC_USER);
+                writeString(out, authority.getAuthority());
+                writeNullableString(out, ((OidcUserAuthority) authority).getUserNameAttributeName());
+            } else {
+                throw new UnsupportedValueException("authority " + authority.getClass().getName());
+            }
+        }
+    }
+
+    private List<GrantedAuthority> readAuthorities(DataInputStream in, OidcIdToken idToken, OidcUserInfo userInfo)
+            throws IOException {
+        int size = readVarInt(in);
+        List<GrantedAuthority> authorities = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            byte kind = in.readByte();
+            String authority = readString(in);
+            authorities.add(switch (kind) {
+                case A_SIMPLE -> new SimpleGrantedAuthority(authority);
+                case A_OIDC_USER -> new OidcUserAuthority(authority, idToken, userInfo, readNullableString(in));
+                default -> throw new SerializationException("Unknown authority kind " + kind);
+            });
+        }
+        return authorities;
+    }
+
+    // ---- authorized client -------------------------------------------------------------------
+
+    private void writeAuthorizedClient(DataOutputStream out, OAuth2AuthorizedClient client) throws IOException {
+        OAuth2AccessToken access = client.getAccessToken();
+        if (!OAuth2AccessToken.TokenType.BEARER.equals(access.getTokenType())) {
+            throw new UnsupportedValueException("non-bearer access token");
+        }
+        writeString(out, client.getClientRegistration().getRegistrationId());
+        writeString(out, client.getPrincipalName());
+
+        writeString(out, access.getTokenValue());
+        writeNullableInstant(out, access.getIssuedAt());
+        writeNullableInstant(out, access.getExpiresAt());
+        writeVarInt(out, access.getScopes().size());
+        for (String scope : access.getScopes()) {
+            writeString(out, scope);
+        }
+
+        OAuth2RefreshToken refresh = client.getRefreshToken();
+        out.writeBoolean(refresh != null);
+        if (refresh != null) {
+            writeString(out, refresh.getTokenValue());
+            writeNullableInstant(out, refresh.getIssuedAt());
+            writeNullableInstant(out, refresh.getExpiresAt());
+        }
+    }
+
+    private OAuth2AuthorizedClient readAuthorizedClient(DataInputStream in) throws IOException {
+        ClientRegistration registration = registration(readString(in));
+        String principalName = readString(in);
+
+        String accessValue = readString(in);
+        Instant accessIssuedAt = readNullableInstant(in);
+        Instant accessExpiresAt = readNullableInstant(in);
+        int scopeCount = readVarInt(in);
+        Set<String> scopes = new LinkedHashSet<>(Math.max(4, scopeCount * 4 / 3 + 1));
+        for (int i = 0; i < scopeCount; i++) {
+            scopes.add(readString(in));
+        }
+        var access = new OAuth2AccessToken(OAuth2AccessToken.TokenType.BEARER, accessValue, accessIssuedAt, accessExpiresAt, scopes);
+
+        OAuth2RefreshToken refresh = null;
+        if (in.readBoolean()) {
+            refresh = new OAuth2RefreshToken(readString(in), readNullableInstant(in), readNullableInstant(in));
+        }
+        return new OAuth2AuthorizedClient(registration, principalName, access, refresh);
+    }
+
+    private ClientRegistration registration(String registrationId) {
+        ClientRegistration registration = registrations.apply(registrationId);
+        if (registration == null) {
+            throw new UnsupportedValueException("unknown client registration " + registrationId);
+        }
+        return registration;
+    }
+
+    // ---- primitives --------------------------------------------------------------------------
+
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    /**
+     * Reads a length or element count. Every counted thing takes at least one byte, so a value that
+     * is negative or larger than what is left is corrupt rather than an allocation to attempt.
+     */
+    private static int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = in.readByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                if (value < 0 || value > in.available()) {
+                    throw new SerializationException("Invalid length " + value);
+                }
+                return value;
+            }
+        }
+        throw new SerializationException("Malformed varint");
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[readVarInt(in)];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeNullableString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            writeString(out, value);
+        }
+    }
+
+    private static String readNullableString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? readString(in) : null;
+    }
+
+    private static void writeInstant(DataOutputStream out, Instant instant) throws IOException {
+        out.writeLong(instant.getEpochSecond());
+        out.writeInt(instant.getNano());
+    }
+
+    private static Instant readInstant(DataInputStream in) throws IOException {
+        return Instant.ofEpochSecond(in.readLong(), in.readInt());
+    }
+
+    private static void writeNullableInstant(DataOutputStream out, Instant instant) throws IOException {
+        out.writeBoolean(instant != null);
+        if (instant != null) {
+            writeInstant(out, instant);
+        }
+    }
+
+    private static Instant readNullableInstant(DataInputStream in) throws IOException {
+        return in.readBoolean() ? readInstant(in) : null;
+    }
+
+    private void writeNullableMap(DataOutputStream out, Map<String, Object> map) throws IOException {
+        out.writeBoolean(map != null);
+        if (map != null) {
+            writeMap(out, map);
+        }
+    }
+
+    private Map<String, Object> readNullableMap(DataInputStream in) throws IOException {
+        return in.readBoolean() ? readMap(in) : null;
+    }
+
+    /**
+     * Signals a value the compact format does not cover; on write the caller falls back to JDK
+     * serialization, on read it becomes a {@link SerializationException}.
+     */
+    private static final class UnsupportedValueException extends RuntimeException {
+        UnsupportedValueException(String message) {
+            super(message, null, false, false);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.mochafund.authgateway.session.codec;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.BeanClassLoaderAware;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.security.oauth2.client.registration.ReactiveClientRegistrationRepository;
+
+@Configuration
+public class SessionCodecConfig implements BeanClassLoaderAware {
+
+    private ClassLoader classLoader;
+
+    @Override
+    public void setBeanClassLoader(ClassLoader classLoader) {
+        this.classLoader = classLoader;
+    }
+
+    /**
+     * Picked up by name by Spring Session's Redis configuration. Registrations are looked up on each
+     * read, so they follow the provider snapshot refresh. The serializer runs on event-loop threads
+     * and must not block: the repository answers from memory, so its result is already there when
+     * taken with {@code getNow}, and one that needed I/O would read as an unknown registration.
+     */
+    @Bean("springSessionDefaultRedisSerializer")
+    RedisSerializer<Object> springSessionDefaultRedisSerializer(
+            ReactiveClientRegistrationRepository registrations,
+            MeterRegistry meterRegistry,
+            @Value("${mochafund.session.codec.write-format:compact}") CompactSessionSerializer.WriteFormat writeFormat
+    ) {
+        return new CompactSessionSerializer(
+                registrationId -> registrations.findByRegistrationId(registrationId).toFuture().getNow(null),
+                writeFormat, classLoader, meterRegistry);
+    }
+}
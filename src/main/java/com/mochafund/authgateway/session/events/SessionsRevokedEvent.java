@@ -0,0 +1,10 @@
+package com.mochafund.authgateway.session.events;
+
+import java.util.List;
+
+/**
+ * Published after sessions were removed from Redis outside the session repository, which means
+ * Spring Session's own deleted events are not emitted for them.
+ */
+public record SessionsRevokedEvent(List<String> sessionIds) {
+}
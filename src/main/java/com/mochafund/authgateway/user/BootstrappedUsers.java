@@ -0,0 +1,52 @@
+package com.mochafund.authgateway.user;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Principals this node has bootstrapped with identity-service recently, so a repeat login whose
+ * tokens do not carry the {@code userId} claim yet can skip the bootstrap call.
+ * <p>
+ * {@code user.deleted} and {@code user.updated} evict the principal. Only one node consumes each
+ * event, so the TTL bounds how long another node may keep a stale entry.
+ */
+@Component
+public class BootstrappedUsers {
+
+    private final Cache<String, Boolean> cache;
+
+    public BootstrappedUsers(
+            MeterRegistry meterRegistry,
+            @Value("${mochafund.user-bootstrap.cache.max-size:100000}") long maxSize,
+            @Value("${mochafund.user-bootstrap.cache.ttl:5m}") Duration ttl
+    ) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "authgw.user-bootstrap");
+    }
+
+    public boolean contains(String principal) {
+        return principal != null && cache.getIfPresent(principal) != null;
+    }
+
+    public void add(String principal) {
+        if (principal != null) {
+            cache.put(principal, Boolean.TRUE);
+        }
+    }
+
+    public void invalidate(String principal) {
+        if (principal != null) {
+            cache.invalidate(principal);
+        }
+    }
+}
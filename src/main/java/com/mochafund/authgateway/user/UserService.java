@@ -1,8 +1,11 @@
 package com.mochafund.authgateway.user;
 
-import lombok.RequiredArgsConstructor;
+import com.mochafund.authgateway.common.CorrelationIds;
+import com.mochafund.authgateway.common.metrics.OutcomeTimer;
+import com.mochafund.authgateway.common.retry.BudgetedRetry;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.http.HttpStatusCode;
 import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
 import org.springframework.stereotype.Service;
@@ -11,13 +14,22 @@ import reactor.core.publisher.Mono;
 
 @Slf4j
 @Service
-@RequiredArgsConstructor
 public class UserService {
 
-    private final WebClient.Builder webClientBuilder;
+    private final WebClient webClient;
+    private final BudgetedRetry retry;
+    private final OutcomeTimer bootstrapTimer;
 
-    @Value("${mochafund.internal-gateway.uri}")
-    private String internalGatewayUri;
+    public UserService(
+            @Qualifier("internalGatewayWebClient") WebClient webClient,
+            @Qualifier("internalGatewayRetry") BudgetedRetry retry,
+            MeterRegistry meterRegistry
+    ) {
+        this.webClient = webClient;
+        this.retry = retry;
+        this.bootstrapTimer = OutcomeTimer.register(meterRegistry, "authgw.identity.bootstrap",
+                "POST /api/identity/users/bootstrap on the internal gateway");
+    }
 
     public Mono<Void> bootstrapUser(OAuth2AuthorizedClient client) {
         var accessToken = client.getAccessToken();
@@ -25,14 +37,20 @@ public class UserService {
             log.warn("No access token available; cannot bootstrap user");
             return Mono.empty();
         }
-        String url = internalGatewayUri + "/api/identity/users/bootstrap";
-
-        return webClientBuilder.build().post()
-                .uri(url)
-                .headers(h -> h.setBearerAuth(accessToken.getTokenValue()))
-                .retrieve()
-                .onStatus(HttpStatusCode::isError, resp -> resp.createException().flatMap(Mono::error))
-                .toBodilessEntity()
+        // Retried only when the request was never sent; the identity service is not relied on to
+        // treat a second bootstrap of the same user as a no-op
+        return bootstrapTimer.time(retry.apply(Mono.deferContextual(ctx -> webClient.post()
+                        .uri("/api/identity/users/bootstrap")
+                        .headers(h -> {
+                            h.setBearerAuth(accessToken.getTokenValue());
+                            String correlationId = CorrelationIds.fromContext(ctx);
+                            if (correlationId != null) {
+                                h.set(CorrelationIds.HEADER, correlationId);
+                            }
+                        })
+                        .retrieve()
+                        .onStatus(HttpStatusCode::isError, resp -> resp.createException().flatMap(Mono::error))
+                        .toBodilessEntity()), BudgetedRetry::isConnectFailure))
                 .doOnSuccess(x -> log.info(
                         "Bootstrap user request completed for {}", client.getPrincipalName()))
                 .then();
@@ -0,0 +1,69 @@
+package com.mochafund.authgateway.user.consumer;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * User events this node has already applied, so a redelivered or duplicated envelope is skipped by
+ * its {@code id}, and an event that does not revoke anything is skipped when an event with a later
+ * {@code occurredAt} was already applied for the same user. Revoking events are never skipped as
+ * stale: a late {@code user.deleted} must still end the user's sessions.
+ * <p>
+ * Both are bounded by {@code max-size} and forgotten after {@code window}. Nothing is recorded until
+ * {@link UserEventConsumer} has finished a batch, so a batch that fails and is redelivered is applied
+ * in full. The record is per node: after a rebalance the new owner of a partition may repeat a
+ * revocation, which is harmless.
+ */
+@Component
+public class ProcessedUserEvents {
+
+    private final Cache<UUID, Boolean> ids;
+    private final Cache<String, LocalDateTime> latest;
+
+    public ProcessedUserEvents(
+            MeterRegistry meterRegistry,
+            @Value("${mochafund.user-events.dedup.max-size:200000}") long maxSize,
+            @Value("${mochafund.user-events.dedup.window:1h}") Duration window
+    ) {
+        this.ids = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(window)
+                .recordStats()
+                .build();
+        this.latest = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(window)
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, ids, "authgw.user-events.dedup");
+    }
+
+    public boolean isDuplicate(UUID id) {
+        return id != null && ids.getIfPresent(id) != null;
+    }
+
+    /** True when an event for this user that occurred after {@code occurredAt} has already been applied. */
+    public boolean isStale(String userId, LocalDateTime occurredAt) {
+        if (userId == null || occurredAt == null) {
+            return false;
+        }
+        LocalDateTime applied = latest.getIfPresent(userId);
+        return applied != null && occurredAt.isBefore(applied);
+    }
+
+    /** Records a finished batch: its envelope ids, and the newest {@code occurredAt} it applied per user. */
+    public void record(Collection<UUID> applied, Map<String, LocalDateTime> occurredAt) {
+        applied.forEach(id -> ids.put(id, Boolean.TRUE));
+        occurredAt.forEach((userId, at) -> latest.asMap()
+                .merge(userId, at, (current, next) -> next.isAfter(current) ? next : current));
+    }
+}
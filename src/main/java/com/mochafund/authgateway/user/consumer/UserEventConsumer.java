@@ -2,58 +2,251 @@ package com.mochafund.authgateway.user.consumer;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mochafund.authgateway.common.CorrelationIds;
 import com.mochafund.authgateway.common.events.EventEnvelope;
+import com.mochafund.authgateway.common.metrics.OutcomeTimer;
 import com.mochafund.authgateway.common.events.EventType;
 import com.mochafund.authgateway.session.SessionsService;
+import com.mochafund.authgateway.user.BootstrappedUsers;
 import com.mochafund.authgateway.user.events.UserEventPayload;
-import lombok.RequiredArgsConstructor;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.slf4j.MDC;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.support.Acknowledgment;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 @Slf4j
-@RequiredArgsConstructor
 @Service
 public class UserEventConsumer {
 
     private final SessionsService sessions;
+    private final BootstrappedUsers bootstrappedUsers;
+    private final ProcessedUserEvents processed;
     private final ObjectMapper objectMapper;
+    private final int deleteConcurrency;
+    private final Duration batchTimeout;
+    private final boolean principalFallback;
+
+    private final Map<String, Counter> recordsByTopic;
+    private final DistributionSummary batchSize;
+    private final OutcomeTimer batchTimer;
+    private final Timer eventLag;
+    private final Counter sessionsDeleted;
+    private final Counter malformed;
+    private final Counter duplicates;
+    private final Counter stale;
+
+    public UserEventConsumer(
+            SessionsService sessions,
+            BootstrappedUsers bootstrappedUsers,
+            ProcessedUserEvents processed,
+            ObjectMapper objectMapper,
+            MeterRegistry meterRegistry,
+            @Value("${mochafund.user-events.delete-concurrency:16}") int deleteConcurrency,
+            @Value("${mochafund.user-events.batch-timeout:60s}") Duration batchTimeout,
+            @Value("${mochafund.user-events.principal-fallback:true}") boolean principalFallback
+    ) {
+        this.sessions = sessions;
+        this.bootstrappedUsers = bootstrappedUsers;
+        this.processed = processed;
+        this.objectMapper = objectMapper;
+        this.deleteConcurrency = deleteConcurrency;
+        this.batchTimeout = batchTimeout;
+        this.principalFallback = principalFallback;
+
+        this.recordsByTopic = Map.of(
+                EventType.USER_DELETED, recordsCounter(meterRegistry, EventType.USER_DELETED),
+                EventType.USER_UPDATED, recordsCounter(meterRegistry, EventType.USER_UPDATED));
+        this.batchSize = DistributionSummary.builder("authgw.user-events.batch.size")
+                .description("Records per consumed batch")
+                .register(meterRegistry);
+        this.batchTimer = OutcomeTimer.register(meterRegistry, "authgw.user-events.batch.duration",
+                "Time to apply a batch of user events, including session deletes");
+        this.eventLag = Timer.builder("authgw.user-events.lag")
+                .description("Time between a user event being produced and its sessions being revoked")
+                .register(meterRegistry);
+        this.sessionsDeleted = Counter.builder("authgw.user-events.sessions.deleted")
+                .description("Sessions revoked in response to user events")
+                .register(meterRegistry);
+        this.malformed = Counter.builder("authgw.user-events.malformed")
+                .description("User events skipped because they could not be parsed")
+                .register(meterRegistry);
+        this.duplicates = Counter.builder("authgw.user-events.duplicates")
+                .description("User events skipped because an envelope with the same id was already applied")
+                .register(meterRegistry);
+        this.stale = Counter.builder("authgw.user-events.stale")
+                .description("Non-revoking user events skipped because a newer event for the same user was already applied")
+                .register(meterRegistry);
+    }
+
+    private static Counter recordsCounter(MeterRegistry meterRegistry, String topic) {
+        return Counter.builder("authgw.user-events.records")
+                .description("User event records consumed")
+                .tag("topic", topic)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Consumes {@code user.deleted} and {@code user.updated} together so a user that shows up
+     * several times in one poll is revoked once. Sessions are found through the user id index,
+     * which does not move when the email changes; with {@code principal-fallback} the email's
+     * principal index is cleared too, for sessions created before the user id index existed.
+     * Offsets are committed only after every delete in the batch has completed; a failure
+     * rethrows and the container redelivers the batch.
+     * <p>
+     * Envelopes already applied (by {@code id}) are skipped, and so are non-revoking events older
+     * than one already applied for the same user; revoking events always apply, see
+     * {@link ProcessedUserEvents}. Each of the {@code concurrency} consumers owns its own
+     * partitions; with range assignment the same partition of both topics goes to the same
+     * consumer, so a user's events keyed by user id are always handled by one thread in order.
+     */
+    @KafkaListener(
+            topics = {EventType.USER_DELETED, EventType.USER_UPDATED},
+            groupId = "auth-gateway",
+            batch = "true",
+            concurrency = "${mochafund.user-events.concurrency:3}"
+    )
+    public void handleUserEvents(List<ConsumerRecord<String, String>> records, Acknowledgment ack) {
+        batchSize.record(records.size());
+        // target -> correlation ID of the last event that revoked it
+        Map<Target, String> targets = new LinkedHashMap<>();
+        Set<UUID> applied = new LinkedHashSet<>();
+        // userId -> occurredAt of the newest event applied in this batch
+        Map<String, LocalDateTime> positions = new HashMap<>();
+        for (ConsumerRecord<String, String> record : records) {
+            recordsByTopic.get(record.topic()).increment();
+            EventEnvelope<UserEventPayload> event = readEvent(record);
+            if (event == null) {
+                continue;
+            }
+            if (event.getId() != null && (processed.isDuplicate(event.getId()) || !applied.add(event.getId()))) {
+                duplicates.increment();
+                log.debug("Skipping duplicate event {} at {}-{}@{}", event.getId(), record.topic(), record.partition(), record.offset());
+                continue;
+            }
+            String userId = event.getPayload().getUserId() != null ? event.getPayload().getUserId().toString() : null;
+            LocalDateTime occurredAt = event.getOccurredAt();
+            Revocation revocation = revocationFor(record.topic(), event);
+            if (userId != null && occurredAt != null) {
+                LocalDateTime newest = positions.get(userId);
+                // A late revoking event still revokes: the newer event may not have revoked anything
+                if (revocation == null
+                        && (processed.isStale(userId, occurredAt) || (newest != null && occurredAt.isBefore(newest)))) {
+                    stale.increment();
+                    log.debug("Skipping stale event {} for user id {} from {}", event.getId(), userId, occurredAt);
+                    continue;
+                }
+                if (newest == null || occurredAt.isAfter(newest)) {
+                    positions.put(userId, occurredAt);
+                }
+            }
+
+            if (revocation != null) {
+                if (revocation.userId() != null) {
+                    targets.put(new Target(true, revocation.userId()), revocation.correlationId());
+                }
+                if (revocation.principal() != null && (revocation.userId() == null || principalFallback)) {
+                    targets.put(new Target(false, revocation.principal()), revocation.correlationId());
+                }
+            }
+        }
 
-    @KafkaListener(topics = EventType.USER_DELETED, groupId = "auth-gateway")
-    public void handleUserDeleted(String message) {
-        EventEnvelope<UserEventPayload> event = readEnvelope(message, UserEventPayload.class);
-        String email = event.getPayload().getEmail();
-        log.info("Processing user.deleted - User: {}", email);
-
-        sessions.listByPrincipal(email)
-            .doOnNext(sessionList -> log.info("Found {} sessions for user {}", sessionList.size(), email))
-            .then(sessions.deleteAllByPrincipal(email))
-            .doOnNext(count -> log.info("Deleted {} sessions for user: {}", count, email))
-            .subscribe();
+        batchTimer.record(() -> Flux.fromIterable(targets.entrySet())
+                .flatMap(entry -> delete(entry.getKey())
+                        .doOnNext(count -> {
+                            sessionsDeleted.increment(count);
+                            // A backfill touches every user; only the ones that had sessions are worth a line
+                            if (count > 0) {
+                                log.info("Deleted {} sessions for {}: {}", count,
+                                        entry.getKey().byUserId() ? "user id" : "user", entry.getKey().value());
+                            }
+                        })
+                        .contextWrite(ctx -> entry.getValue() == null
+                                ? ctx : ctx.put(CorrelationIds.KEY, entry.getValue())), deleteConcurrency)
+                .then()
+                .block(batchTimeout));
+        processed.record(applied, positions);
+
+        long now = System.currentTimeMillis();
+        records.forEach(record -> eventLag.record(Math.max(0, now - record.timestamp()), TimeUnit.MILLISECONDS));
+        ack.acknowledge();
+    }
+
+    private Mono<Long> delete(Target target) {
+        return target.byUserId()
+                ? sessions.deleteAllByUserId(target.value())
+                : sessions.deleteAllByPrincipal(target.value());
     }
 
-    @KafkaListener(topics = EventType.USER_UPDATED, groupId = "auth-gateway")
-    public void handleUserUpdated(String message) {
-        EventEnvelope<UserEventPayload> event = readEnvelope(message, UserEventPayload.class);
-        UserEventPayload payload = event.getPayload();
-        String email = payload.getEmail();
-        String oldEmail = payload.getOldEmail();
-        boolean invalidate = payload.isInvalidate();
+    /** The record's envelope, or {@code null} (counted and logged) when it cannot be parsed or has no payload. */
+    private EventEnvelope<UserEventPayload> readEvent(ConsumerRecord<String, String> record) {
+        try {
+            EventEnvelope<UserEventPayload> event = readEnvelope(record.value(), UserEventPayload.class);
+            if (event.getPayload() == null) {
+                throw new IllegalArgumentException("User event envelope has no payload");
+            }
+            return event;
+        } catch (IllegalArgumentException e) {
+            malformed.increment();
+            log.error("Skipping malformed event at {}-{}@{}: {}",
+                    record.topic(), record.partition(), record.offset(), e.getMessage());
+            return null;
+        }
+    }
 
-        log.info("Processing user.updated - User: {} (old: {}), invalidate: {}", email, oldEmail, invalidate);
+    /** User whose sessions the event revokes, or {@code null} when it revokes nothing. */
+    private Revocation revocationFor(String topic, EventEnvelope<UserEventPayload> event) {
+        String correlationId = event.getCorrelationId() != null ? event.getCorrelationId().toString() : null;
+        try (var ignored = correlationId != null ? MDC.putCloseable(CorrelationIds.KEY, correlationId) : null) {
+            UserEventPayload payload = event.getPayload();
+            String userId = payload.getUserId() != null ? payload.getUserId().toString() : null;
+            String email = payload.getEmail();
+            String oldEmail = payload.getOldEmail();
+            // A deleted or changed user must go through bootstrap again on next login
+            bootstrappedUsers.invalidate(email);
+            bootstrappedUsers.invalidate(oldEmail);
 
-        if (invalidate) {
-            String principalEmail = oldEmail != null ? oldEmail : email;
+            if (EventType.USER_DELETED.equals(topic)) {
+                log.debug("Processing user.deleted - User: {}", email);
+                return new Revocation(userId, email, correlationId);
+            }
 
-            sessions.listByPrincipal(principalEmail)
-                    .doOnNext(sessionList -> log.info("Found {} sessions for user {} (principal: {})", sessionList.size(), email, principalEmail))
-                    .then(sessions.deleteAllByPrincipal(principalEmail))
-                    .doOnNext(count -> log.info("Deleted {} sessions for user: {} (principal: {})", count, email, principalEmail))
-                    .subscribe();
+            boolean invalidate = payload.isInvalidate();
+            log.debug("Processing user.updated - User: {} (old: {}), invalidate: {}", email, oldEmail, invalidate);
+            if (!invalidate) {
+                return null;
+            }
+            return new Revocation(userId, oldEmail != null ? oldEmail : email, correlationId);
         }
     }
 
-    private <T> EventEnvelope<T> readEnvelope(String message, Class<T> payloadType) {
+    private record Revocation(String userId, String principal, String correlationId) {
+    }
+
+    /** A user id index or principal name index entry to revoke. */
+    private record Target(boolean byUserId, String value) {
+    }
+
+    <T> EventEnvelope<T> readEnvelope(String message, Class<T> payloadType) {
         try {
             return objectMapper.readValue(
                     message,
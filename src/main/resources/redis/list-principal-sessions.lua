@@ -0,0 +1,22 @@
+-- Reads the fields a session summary needs for each of the given sessions, typically one page of
+-- a principal's index set as returned by scan-index.lua and decoded by the caller.
+-- Session attributes (security context, authorized clients) are never read or sent back.
+--
+-- ARGV[1]     session key prefix, e.g. authgw:sessions:sessions:
+-- ARGV[2..n]  session ids
+--
+-- Returns { id, creationTime, lastAccessedTime, maxInactiveInterval, id, ... } with the field
+-- values still in the session serializer's encoding. Ids whose session hash is already gone are
+-- left out.
+local result = {}
+for i = 2, #ARGV do
+    local id = ARGV[i]
+    local fields = redis.call('HMGET', ARGV[1] .. id, 'creationTime', 'lastAccessedTime', 'maxInactiveInterval')
+    if fields[1] and fields[2] and fields[3] then
+        result[#result + 1] = id
+        result[#result + 1] = fields[1]
+        result[#result + 1] = fields[2]
+        result[#result + 1] = fields[3]
+    end
+end
+return result
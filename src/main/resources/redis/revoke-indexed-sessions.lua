@@ -0,0 +1,63 @@
+-- Removes the given sessions, their index entries and expiration bookkeeping without reading any
+-- session data. Mirrors what ReactiveRedisIndexedSessionRepository#deleteById does per session.
+--
+-- Set and sorted-set members are written with the session serializer. The caller passes each
+-- session as its plain id and as the member bytes it read, unchanged. Each session's <id>:idx set
+-- lists the other index sets it is in, and is read here; its members are encoded key names, which
+-- are decoded below for the two formats the session serializer writes strings in.
+--
+-- KEYS[n]  index sets the sessions were read from, e.g. authgw:sessions:sessions:index:<index name>:<value>
+-- ARGV[1]  session key prefix, e.g. authgw:sessions:sessions:
+-- ARGV[2]  expirations sorted set, e.g. authgw:sessions:sessions:expirations
+-- ARGV[3], ARGV[4], ...  session id and its member as stored, one pair per session
+--
+-- Index sets are only emptied member by member, so a session indexed after the caller's read keeps
+-- its entry. Returns the ids whose session hash still existed, joined with ','.
+
+-- A string as CompactSessionSerializer (B7 01 01 varint-length UTF-8) or JDK serialization
+-- (AC ED 00 05 74 u16-length modified UTF-8) writes it; nil for anything else.
+local function decode(member)
+    local b1, b2, b3 = string.byte(member, 1, 3)
+    if b1 == 0xB7 and b2 == 1 and b3 == 1 then
+        local length, scale, pos = 0, 1, 4
+        repeat
+            local b = string.byte(member, pos)
+            if b == nil then
+                return nil
+            end
+            length = length + (b % 128) * scale
+            scale, pos = scale * 128, pos + 1
+        until b < 128
+        return string.sub(member, pos, pos + length - 1)
+    elseif b1 == 0xAC and b2 == 0xED and string.byte(member, 5) == 0x74 then
+        local hi, lo = string.byte(member, 6, 7)
+        return string.sub(member, 8, 7 + hi * 256 + lo)
+    end
+    return nil
+end
+
+local indexPrefix = ARGV[1] .. 'index:'
+local revoked = {}
+for i = 3, #ARGV, 2 do
+    local id, member = ARGV[i], ARGV[i + 1]
+    local indexKeys = {}
+    for _, indexKey in ipairs(KEYS) do
+        indexKeys[indexKey] = true
+    end
+    for _, encoded in ipairs(redis.call('SMEMBERS', ARGV[1] .. id .. ':idx')) do
+        local indexKey = decode(encoded)
+        -- Only index sets of this namespace; an undecodable name leaves a member the repository skips
+        if indexKey and string.sub(indexKey, 1, #indexPrefix) == indexPrefix then
+            indexKeys[indexKey] = true
+        end
+    end
+    for indexKey in pairs(indexKeys) do
+        redis.call('SREM', indexKey, member)
+    end
+    redis.call('ZREM', ARGV[2], member)
+    if redis.call('UNLINK', ARGV[1] .. id) == 1 then
+        revoked[#revoked + 1] = id
+    end
+    redis.call('UNLINK', ARGV[1] .. 'expires:' .. id, ARGV[1] .. id .. ':idx')
+end
+return table.concat(revoked, ',')
@@ -0,0 +1,14 @@
+-- Reads one SSCAN page of an index set. The members are returned as stored, still in the session
+-- serializer's encoding, for the caller to decode into session ids.
+--
+-- KEYS[1]  index set, e.g. authgw:sessions:sessions:index:<index name>:<value>
+-- ARGV[1]  SSCAN cursor, '0' for the first page
+-- ARGV[2]  SSCAN COUNT hint
+--
+-- Returns { next cursor, member, member, ... }. A next cursor of '0' means the scan is complete.
+local scan = redis.call('SSCAN', KEYS[1], ARGV[1], 'COUNT', ARGV[2])
+local result = { scan[1] }
+for _, member in ipairs(scan[2]) do
+    result[#result + 1] = member
+end
+return result
@@ -0,0 +1,181 @@
+package com.mochafund.authgateway.session.codec;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextImpl;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.security.oauth2.client.authentication.OAuth2AuthenticationToken;
+import org.springframework.security.oauth2.client.registration.ClientRegistration;
+import org.springframework.security.oauth2.core.AuthorizationGrantType;
+import org.springframework.security.oauth2.core.OAuth2AccessToken;
+import org.springframework.security.oauth2.core.OAuth2RefreshToken;
+import org.springframework.security.oauth2.core.oidc.OidcIdToken;
+import org.springframework.security.oauth2.core.oidc.OidcUserInfo;
+import org.springframework.security.oauth2.core.oidc.user.DefaultOidcUser;
+import org.springframework.security.oauth2.core.oidc.user.OidcUserAuthority;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class CompactSessionSerializerTest {
+
+    private static final String REGISTRATION_ID = "auth-gateway";
+    private static final Instant NOW = Instant.parse("2026-01-01T12:00:00.123456789Z");
+
+    private static final ClientRegistration REGISTRATION = ClientRegistration.withRegistrationId(REGISTRATION_ID)
+            .clientId("auth-gateway")
+            .clientSecret("secret")
+            .authorizationGrantType(AuthorizationGrantType.AUTHORIZATION_CODE)
+            .redirectUri("{baseUrl}/login/oauth2/code/{registrationId}")
+            .scope("openid", "email")
+            .authorizationUri("http://keycloak/realms/mochafund/protocol/openid-connect/auth")
+            .tokenUri("http://keycloak/realms/mochafund/protocol/openid-connect/token")
+            .jwkSetUri("http://keycloak/realms/mochafund/protocol/openid-connect/certs")
+            .userInfoUri("http://keycloak/realms/mochafund/protocol/openid-connect/userinfo")
+            .userNameAttributeName("sub")
+            .build();
+
+    private final CompactSessionSerializer serializer = serializer(id -> REGISTRATION_ID.equals(id) ? REGISTRATION : null);
+
+    @Test
+    void roundTripsOidcSecurityContextWithMixedAuthorities() {
+        SecurityContextImpl context = securityContext();
+
+        byte[] bytes = serializer.serialize(context);
+
+        assertEquals(CompactSessionSerializer.MAGIC, bytes[0]);
+        SecurityContextImpl decoded = assertInstanceOf(SecurityContextImpl.class, serializer.deserialize(bytes));
+        assertEquals(context, decoded);
+        OAuth2AuthenticationToken token = (OAuth2AuthenticationToken) decoded.getAuthentication();
+        assertEquals(REGISTRATION_ID, token.getAuthorizedClientRegistrationId());
+        DefaultOidcUser user = (DefaultOidcUser) token.getPrincipal();
+        assertEquals("user-1", user.getName());
+        assertEquals("id-token", user.getIdToken().getTokenValue());
+        assertEquals("ana@example.com", user.getUserInfo().getEmail());
+        assertEquals(Set.copyOf(context.getAuthentication().getAuthorities()), Set.copyOf(token.getAuthorities()));
+    }
+
+    @Test
+    void roundTripsAuthorizedClientsIncludingOneWithoutRefreshToken() {
+        OAuth2AccessToken access = new OAuth2AccessToken(OAuth2AccessToken.TokenType.BEARER, "access-token",
+                NOW, NOW.plus(5, ChronoUnit.MINUTES), Set.of("openid", "email"));
+        var withRefresh = new OAuth2AuthorizedClient(REGISTRATION, "user-1", access,
+                new OAuth2RefreshToken("refresh-token", NOW, NOW.plus(30, ChronoUnit.MINUTES)));
+        var withoutRefresh = new OAuth2AuthorizedClient(REGISTRATION, "user-2", access, null);
+        Map<String, OAuth2AuthorizedClient> clients = Map.of("with-refresh", withRefresh, "without-refresh", withoutRefresh);
+
+        byte[] bytes = serializer.serialize(clients);
+
+        assertEquals(CompactSessionSerializer.MAGIC, bytes[0]);
+        Map<?, ?> decoded = assertInstanceOf(Map.class, serializer.deserialize(bytes));
+        assertEquals(clients.keySet(), decoded.keySet());
+        clients.forEach((key, client) -> assertSameClient(client, (OAuth2AuthorizedClient) decoded.get(key)));
+        assertNull(((OAuth2AuthorizedClient) decoded.get("without-refresh")).getRefreshToken());
+    }
+
+    @Test
+    void roundTripsSessionScalars() {
+        for (Object value : List.of(NOW.toEpochMilli(), 1800, "/dashboard", NOW, true, 0.5)) {
+            byte[] bytes = serializer.serialize(value);
+
+            assertEquals(CompactSessionSerializer.MAGIC, bytes[0]);
+            assertEquals(value, serializer.deserialize(bytes));
+        }
+    }
+
+    @Test
+    void readsJdkSerializedValuesWhileWritingCompact() {
+        var jdk = new JdkSerializationRedisSerializer();
+        SecurityContextImpl context = securityContext();
+
+        assertEquals(context, serializer.deserialize(jdk.serialize(context)));
+        assertEquals(1800, serializer.deserialize(jdk.serialize(1800)));
+    }
+
+    @Test
+    void failsWithSerializationExceptionOnUnknownRegistration() {
+        OAuth2AccessToken access = new OAuth2AccessToken(OAuth2AccessToken.TokenType.BEARER, "access-token", NOW, NOW.plusSeconds(60));
+        byte[] bytes = serializer.serialize(new OAuth2AuthorizedClient(REGISTRATION, "user-1", access));
+        CompactSessionSerializer unaware = serializer(id -> null);
+
+        assertThrows(SerializationException.class, () -> unaware.deserialize(bytes));
+    }
+
+    @Test
+    void failsWithSerializationExceptionOnUnknownVersion() {
+        byte[] bytes = serializer.serialize("/dashboard");
+        bytes[1] = CompactSessionSerializer.VERSION + 1;
+
+        assertThrows(SerializationException.class, () -> serializer.deserialize(bytes));
+    }
+
+    @Test
+    void failsWithSerializationExceptionOnNegativeOrOversizedLength() {
+        byte[] negative = {CompactSessionSerializer.MAGIC, CompactSessionSerializer.VERSION, 1,
+                (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x0F};
+        byte[] oversized = {CompactSessionSerializer.MAGIC, CompactSessionSerializer.VERSION, 8, 0x7F};
+
+        assertThrows(SerializationException.class, () -> serializer.deserialize(negative));
+        assertThrows(SerializationException.class, () -> serializer.deserialize(oversized));
+    }
+
+    private static CompactSessionSerializer serializer(Function<String, ClientRegistration> registrations) {
+        return new CompactSessionSerializer(registrations, CompactSessionSerializer.WriteFormat.COMPACT,
+                CompactSessionSerializerTest.class.getClassLoader(), new SimpleMeterRegistry());
+    }
+
+    private static SecurityContextImpl securityContext() {
+        OidcIdToken idToken = OidcIdToken.withTokenValue("id-token")
+                .subject("user-1")
+                .issuedAt(NOW)
+                .expiresAt(NOW.plus(5, ChronoUnit.MINUTES))
+                .audience(List.of("auth-gateway"))
+                .claim("sid", "keycloak-session-1")
+                .build();
+        OidcUserInfo userInfo = OidcUserInfo.builder()
+                .subject("user-1")
+                .email("ana@example.com")
+                .emailVerified(true)
+                .build();
+        List<GrantedAuthority> userAuthorities = List.of(
+                new OidcUserAuthority("OIDC_USER", idToken, userInfo, "sub"),
+                new SimpleGrantedAuthority("SCOPE_openid"),
+                new SimpleGrantedAuthority("SCOPE_email"));
+        var user = new DefaultOidcUser(userAuthorities, idToken, userInfo, "sub");
+        // Token authorities that differ from the user's, so both lists are written
+        List<GrantedAuthority> tokenAuthorities = List.of(
+                new OidcUserAuthority("OIDC_USER", idToken, userInfo, "sub"),
+                new SimpleGrantedAuthority("ROLE_USER"));
+        return new SecurityContextImpl(new OAuth2AuthenticationToken(user, tokenAuthorities, REGISTRATION_ID));
+    }
+
+    private static void assertSameClient(OAuth2AuthorizedClient expected, OAuth2AuthorizedClient actual) {
+        assertEquals(expected.getClientRegistration().getRegistrationId(), actual.getClientRegistration().getRegistrationId());
+        assertEquals(expected.getPrincipalName(), actual.getPrincipalName());
+        assertEquals(expected.getAccessToken().getTokenType(), actual.getAccessToken().getTokenType());
+        assertEquals(expected.getAccessToken().getTokenValue(), actual.getAccessToken().getTokenValue());
+        assertEquals(expected.getAccessToken().getIssuedAt(), actual.getAccessToken().getIssuedAt());
+        assertEquals(expected.getAccessToken().getExpiresAt(), actual.getAccessToken().getExpiresAt());
+        assertEquals(expected.getAccessToken().getScopes(), actual.getAccessToken().getScopes());
+        if (expected.getRefreshToken() == null) {
+            assertNull(actual.getRefreshToken());
+        } else {
+            assertEquals(expected.getRefreshToken().getTokenValue(), actual.getRefreshToken().getTokenValue());
+            assertEquals(expected.getRefreshToken().getIssuedAt(), actual.getRefreshToken().getIssuedAt());
+            assertEquals(expected.getRefreshToken().getExpiresAt(), actual.getRefreshToken().getExpiresAt());
+        }
+    }
+}